@@ -0,0 +1,131 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import hu.blackbelt.structured.map.proxy.MapProxy.AttributeInfo;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static hu.blackbelt.structured.map.proxy.MapProxy.DEFULT_STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND;
+import static hu.blackbelt.structured.map.proxy.MapProxy.STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND;
+
+/**
+ * Compiled read of a bean's properties into the map form of a proxy interface. The matching bean getters
+ * are resolved once per bean class and proxy interface as MethodHandles.
+ */
+final class BeanReader {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static LoadingCache<ReaderKey, BeanReader> readerCache = CacheBuilder
+            .newBuilder()
+            .expireAfterAccess(Long.parseLong(System.getProperty(STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND, DEFULT_STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND)), TimeUnit.SECONDS)
+            .build(new CacheLoader<ReaderKey, BeanReader>() {
+                @Override
+                public BeanReader load(ReaderKey key) throws Exception {
+                    return new BeanReader(key.beanClass, key.proxyClass);
+                }
+            });
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static final class ReaderKey {
+        private final Class beanClass;
+        private final Class proxyClass;
+    }
+
+    private final String[] mapKeys;
+    private final MethodHandle[] getters;
+
+    private BeanReader(Class beanClass, Class proxyClass) {
+        Map<String, AttributeInfo> beanInfos = MapProxy.getTypeInfo(beanClass);
+        List<String> keys = new ArrayList<>();
+        List<MethodHandle> handles = new ArrayList<>();
+        MapProxy.getTypeInfo(proxyClass).forEach((attrName, proxyInfo) -> {
+            AttributeInfo beanInfo = beanInfos.get(attrName);
+            if (!proxyInfo.isComposite() && beanInfo != null && beanInfo.getPropertyDescriptor() != null
+                    && beanInfo.getPropertyDescriptor().getReadMethod() != null) {
+                keys.add(proxyInfo.getMapKey());
+                handles.add(toHandle(beanInfo.getPropertyDescriptor().getReadMethod()));
+            }
+        });
+        mapKeys = keys.toArray(new String[0]);
+        getters = handles.toArray(new MethodHandle[0]);
+    }
+
+    static BeanReader of(Class beanClass, Class proxyClass) {
+        try {
+            return readerCache.getUnchecked(new ReaderKey(beanClass, proxyClass));
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the bean's property values keyed by the map keys of the proxy interface. The values are not
+     * converted, that is done by the proxy when the map is used to create it.
+     */
+    Map<String, Object> read(Object bean) {
+        Map<String, Object> map = new LinkedHashMap<>(mapKeys.length * 4 / 3 + 1);
+        for (int i = 0; i < mapKeys.length; i++) {
+            try {
+                map.put(mapKeys[i], (Object) getters[i].invokeExact(bean));
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return map;
+    }
+
+    private static MethodHandle toHandle(Method method) {
+        try {
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.lookup().unreflect(method);
+            } catch (IllegalAccessException e) {
+                method.setAccessible(true);
+                handle = MethodHandles.lookup().unreflect(method);
+            }
+            return handle.asType(GETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(String.format("Could not access getter %s of %s", method.getName(), method.getDeclaringClass().getName()), e);
+        }
+    }
+}
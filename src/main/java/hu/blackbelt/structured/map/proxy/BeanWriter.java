@@ -0,0 +1,254 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import hu.blackbelt.structured.map.proxy.MapProxy.AttributeInfo;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static hu.blackbelt.structured.map.proxy.MapProxy.DEFULT_STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND;
+import static hu.blackbelt.structured.map.proxy.MapProxy.STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND;
+
+/**
+ * Compiled conversion of a proxy to a bean. The attribute pairs, their conversion kinds and the bean
+ * constructor and setters are resolved once per proxy interface and bean class, the values are read
+ * directly from the internal storage of the proxy.
+ */
+final class BeanWriter<T> {
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private static LoadingCache<WriterKey, BeanWriter> writerCache = CacheBuilder
+            .newBuilder()
+            .expireAfterAccess(Long.parseLong(System.getProperty(STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND, DEFULT_STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND)), TimeUnit.SECONDS)
+            .build(new CacheLoader<WriterKey, BeanWriter>() {
+                @Override
+                public BeanWriter load(WriterKey key) throws Exception {
+                    return new BeanWriter(key.proxyClass, key.beanClass);
+                }
+            });
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static final class WriterKey {
+        private final Class proxyClass;
+        private final Class beanClass;
+    }
+
+    private enum Kind {
+        /**
+         * Collection of proxies which are assignable to the bean collection's element type.
+         */
+        COLLECTION_AS_IS,
+        /**
+         * Collection of proxies which are converted to beans one by one.
+         */
+        COLLECTION_OF_BEANS,
+        /**
+         * Any other value, the conversion is selected by the actual value.
+         */
+        VALUE
+    }
+
+    private final class Step {
+        private final String attrName;
+        private final AttributeInfo proxyInfo;
+        private final AttributeInfo beanInfo;
+        private final MethodHandle setter;
+        private final Kind kind;
+        private final Class proxyValueType;
+        private final Class beanValueType;
+
+        private Step(String attrName, AttributeInfo proxyInfo, AttributeInfo beanInfo, MethodHandle setter) {
+            this.attrName = attrName;
+            this.proxyInfo = proxyInfo;
+            this.beanInfo = beanInfo;
+            this.setter = setter;
+
+            ParameterizedType proxyParameterType = proxyInfo.getParameterType();
+            ParameterizedType beanParameterType = beanInfo.getParameterType();
+            if (Collection.class.isAssignableFrom(beanInfo.getPropertyType())
+                    && Collection.class.isAssignableFrom(proxyInfo.getPropertyType())
+                    && proxyParameterType != null && beanParameterType != null) {
+                proxyValueType = MapProxy.getRawType(proxyParameterType, 0);
+                beanValueType = MapProxy.getRawType(beanParameterType, 0);
+                if (beanValueType.isAssignableFrom(proxyValueType)) {
+                    kind = Kind.COLLECTION_AS_IS;
+                } else if (!beanValueType.isInterface()) {
+                    kind = Kind.COLLECTION_OF_BEANS;
+                } else {
+                    kind = Kind.VALUE;
+                }
+            } else {
+                kind = Kind.VALUE;
+                if (Optional.class.isAssignableFrom(proxyInfo.getPropertyType()) && proxyParameterType != null) {
+                    proxyValueType = MapProxy.getRawType(proxyParameterType, 0);
+                } else {
+                    proxyValueType = proxyInfo.getPropertyType();
+                }
+                beanValueType = beanInfo.getPropertyType();
+            }
+        }
+
+        private Object convert(Object value, MapProxyParams params) {
+            switch (kind) {
+                case COLLECTION_AS_IS:
+                    return wrap(value, params);
+                case COLLECTION_OF_BEANS:
+                    List<Object> beans = new ArrayList<>(((Collection) value).size());
+                    for (Object element : (Collection) value) {
+                        beans.add(toBean(element, proxyValueType, beanValueType, params));
+                    }
+                    return wrap(beans, params);
+                default:
+                    if (value instanceof MapHolder && !Map.class.isAssignableFrom(beanValueType)) {
+                        return of(proxyValueType, beanValueType).write(((MapHolder) value).$internalMap(), params);
+                    } else if (beanValueType.isEnum() && beanValueType.isInstance(value)) {
+                        return value;
+                    }
+                    return MapProxy.toBeanValue(proxyClass, attrName, proxyInfo, beanInfo, MapProxy.toValue(proxyClass, value, params), params);
+            }
+        }
+
+        private Object wrap(Object value, MapProxyParams params) {
+            if (!params.isImmutable()) {
+                return MapProxy.mutableCollection(beanInfo.getPropertyType(), (Collection) value);
+            } else {
+                return MapProxy.immutableCollection(beanValueType, (Collection) value);
+            }
+        }
+    }
+
+    private final Class proxyClass;
+    private final Class<T> beanClass;
+    private final MethodHandle constructor;
+    private final List<Step> steps = new ArrayList<>();
+
+    private BeanWriter(Class proxyClass, Class<T> beanClass) {
+        this.proxyClass = proxyClass;
+        this.beanClass = beanClass;
+        this.constructor = findConstructor(beanClass);
+
+        Map<String, AttributeInfo> beanInfos = MapProxy.getTypeInfo(beanClass);
+        MapProxy.getTypeInfo(proxyClass).forEach((attrName, proxyInfo) -> {
+            AttributeInfo beanInfo = beanInfos.get(attrName);
+            if (beanInfo != null && beanInfo.getPropertyDescriptor() != null && beanInfo.getPropertyDescriptor().getWriteMethod() != null) {
+                steps.add(new Step(attrName, proxyInfo, beanInfo, toHandle(beanInfo.getPropertyDescriptor().getWriteMethod())));
+            }
+        });
+    }
+
+    static <T> BeanWriter<T> of(Class proxyClass, Class<T> beanClass) {
+        try {
+            return writerCache.getUnchecked(new WriterKey(proxyClass, beanClass));
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    T write(Map<String, Object> storage, MapProxyParams params) {
+        if (constructor == null) {
+            throw new IllegalArgumentException("Default constructor for " + beanClass.getName() + " not found");
+        }
+        T bean;
+        try {
+            bean = (T) constructor.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("Default constructor for " + beanClass.getName() + " not found", e);
+        }
+        for (Step step : steps) {
+            Object value = storage.get(step.proxyInfo.getMapKey());
+            if (value == null) {
+                continue;
+            }
+            Object valueToSet = step.convert(value, params);
+            if (valueToSet != null) {
+                try {
+                    step.setter.invokeExact((Object) bean, valueToSet);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        return bean;
+    }
+
+    private static Object toBean(Object value, Class proxyClass, Class beanClass, MapProxyParams params) {
+        if (value instanceof MapHolder) {
+            return of(proxyClass, beanClass).write(((MapHolder) value).$internalMap(), params);
+        }
+        return MapProxy.toBeanFromObject(value, proxyClass, beanClass, params);
+    }
+
+    private static MethodHandle findConstructor(Class beanClass) {
+        try {
+            Constructor constructor = beanClass.getConstructor();
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.lookup().unreflectConstructor(constructor);
+            } catch (IllegalAccessException e) {
+                constructor.setAccessible(true);
+                handle = MethodHandles.lookup().unreflectConstructor(constructor);
+            }
+            return handle.asType(CONSTRUCTOR_TYPE);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle toHandle(Method method) {
+        try {
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.lookup().unreflect(method);
+            } catch (IllegalAccessException e) {
+                method.setAccessible(true);
+                handle = MethodHandles.lookup().unreflect(method);
+            }
+            return handle.asType(SETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(String.format("Could not access setter %s of %s", method.getName(), method.getDeclaringClass().getName()), e);
+        }
+    }
+}
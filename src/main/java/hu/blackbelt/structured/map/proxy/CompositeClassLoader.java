@@ -20,6 +20,8 @@ package hu.blackbelt.structured.map.proxy;
  * #L%
  */
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.URL;
@@ -33,9 +35,19 @@ import static java.util.Arrays.asList;
 @Slf4j
 public class CompositeClassLoader extends ClassLoader {
     private static final String MANDATORY_CLASS_LOADER_MESSAGE = "The ClassLoader argument must be non-null.";
+    private static final int LOOKUP_CACHE_SIZE = 1024;
+
+    static {
+        registerAsParallelCapable();
+    }
+
     // Class is used instead of interface to access the putIfAbsent() method.
     private CopyOnWriteArrayList<ClassLoader> classLoaders;
 
+    // Replaced when the class loaders change, so lookups running concurrently cannot fill the new one with
+    // results of the previous class loaders.
+    private volatile Lookups lookups = new Lookups();
+
     public CompositeClassLoader(ClassLoader... classLoaders) {
         super(CompositeClassLoader.class.getClassLoader());
         Arrays.stream(classLoaders)
@@ -45,32 +57,54 @@ public class CompositeClassLoader extends ClassLoader {
 
     public void insert(ClassLoader classLoader) {
         checkNotNull(classLoader, MANDATORY_CLASS_LOADER_MESSAGE);
-        throw new UnsupportedOperationException();
+        synchronized (classLoaders) {
+            if (!classLoaders.contains(classLoader)) {
+                classLoaders.add(0, classLoader);
+            }
+        }
+        lookups = new Lookups();
     }
 
     public void append(ClassLoader classLoader) {
         checkNotNull(classLoader, MANDATORY_CLASS_LOADER_MESSAGE);
-        classLoaders.addIfAbsent(classLoader);
+        synchronized (classLoaders) {
+            classLoaders.addIfAbsent(classLoader);
+        }
+        lookups = new Lookups();
     }
 
     public void remove(ClassLoader classLoader) {
         checkNotNull(classLoader, MANDATORY_CLASS_LOADER_MESSAGE);
-        classLoaders.remove(classLoader);
+        synchronized (classLoaders) {
+            classLoaders.remove(classLoader);
+        }
+        lookups = new Lookups();
     }
 
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Lookups current = lookups;
+        Class<?> found = current.found.getIfPresent(name);
+        if (found != null) {
+            return found;
+        }
+        if (current.missing.getIfPresent(name) != null) {
+            throw new ClassNotFoundException(name);
+        }
+
         log.trace("Finding {} class.", name);
         for (ClassLoader classLoader : classLoaders) {
             try {
                 Class<?> cl = classLoader.loadClass(name);
                 log.trace("Class {} found using {} class loader.", name, classLoader);
+                current.found.put(name, cl);
                 return cl;
             } catch (ClassNotFoundException cnfe) {
                 // This block intentionally left blank.
             }
         }
         log.trace("Class {} not found.", name);
+        current.missing.put(name, Boolean.TRUE);
         throw new ClassNotFoundException(name);
     }
 
@@ -90,4 +124,13 @@ public class CompositeClassLoader extends ClassLoader {
         }
         return result;
     }
+
+    private static final class Lookups {
+        private final Cache<String, Class<?>> found = CacheBuilder.newBuilder()
+                .maximumSize(LOOKUP_CACHE_SIZE)
+                .build();
+        private final Cache<String, Boolean> missing = CacheBuilder.newBuilder()
+                .maximumSize(LOOKUP_CACHE_SIZE)
+                .build();
+    }
 }
@@ -0,0 +1,142 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Storage of proxies in concurrent mode. Reads go to a {@link ConcurrentHashMap} without locking, null values
+ * are stored as a marker, so an attribute set to null can be distinguished from a missing one like in the
+ * other storages.
+ */
+final class ConcurrentStorageMap extends AbstractMap<String, Object> {
+
+    private static final Object NULL = new Object();
+
+    private final ConcurrentHashMap<String, Object> values;
+
+    ConcurrentStorageMap(Map<String, ?> source) {
+        values = new ConcurrentHashMap<>(Math.max(16, source.size() * 2));
+        source.forEach((key, value) -> values.put(key, mask(value)));
+    }
+
+    /**
+     * Replaces the value of the given key with the result of the function by compare and set, the function
+     * is applied again when the value was changed by another thread in the meantime. The function has to be
+     * free of side effects. Returns the previous value.
+     */
+    Object update(String key, UnaryOperator<Object> function) {
+        while (true) {
+            Object current = values.get(key);
+            Object updated = mask(function.apply(unmask(current)));
+            if (current == null ? values.putIfAbsent(key, updated) == null : values.replace(key, current, updated)) {
+                return unmask(current);
+            }
+        }
+    }
+
+    @Override
+    public Object get(Object key) {
+        return unmask(values.get(key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return unmask(values.put(key, mask(value)));
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return unmask(values.remove(key));
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return values.remove(key, mask(value));
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public void clear() {
+        values.clear();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        values.forEach((key, value) -> action.accept(key, unmask(value)));
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                Iterator<Entry<String, Object>> iterator = values.entrySet().iterator();
+                return new Iterator<Entry<String, Object>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        Entry<String, Object> entry = iterator.next();
+                        return new SimpleImmutableEntry<>(entry.getKey(), unmask(entry.getValue()));
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.size();
+            }
+        };
+    }
+
+    private static Object mask(Object value) {
+        return value == null ? NULL : value;
+    }
+
+    private static Object unmask(Object value) {
+        return value == NULL ? null : value;
+    }
+}
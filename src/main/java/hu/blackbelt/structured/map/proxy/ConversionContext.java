@@ -0,0 +1,112 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the values converted during one top-level conversion keyed by the identity of their source, so a node
+ * which is referenced several times is converted once and the references share the converted value. A source
+ * is registered before its values are converted, so a cyclic reference resolves to the value being filled.
+ */
+final class ConversionContext {
+
+    private static final ThreadLocal<ConversionContext> CURRENT = new ThreadLocal<>();
+
+    private static final Object IN_PROGRESS = new Object();
+
+    private final Map<Object, Map<Object, Object>> converted = new IdentityHashMap<>();
+
+    private final Map<Object, Object> sources = new IdentityHashMap<>();
+
+    private ConversionContext() {
+    }
+
+    /**
+     * Returns the value the source has already been converted to the target in the current conversion, otherwise
+     * converts it. A new context is opened for the duration of the conversion if there is none.
+     */
+    static <R> R convert(Object source, Object target, Supplier<R> conversion) {
+        ConversionContext context = CURRENT.get();
+        if (context == null) {
+            context = new ConversionContext();
+            CURRENT.set(context);
+            try {
+                return context.convertValue(source, target, conversion);
+            } finally {
+                CURRENT.remove();
+            }
+        }
+        return context.convertValue(source, target, conversion);
+    }
+
+    /**
+     * Registers the value which is being filled, the cyclic references to the source resolve to it.
+     */
+    static void register(Object source, Object target, Object value) {
+        ConversionContext context = CURRENT.get();
+        if (context != null && source != null) {
+            context.put(source, target, value);
+        }
+    }
+
+    /**
+     * Registers the copy of a source, the copy is converted as the source itself.
+     */
+    static void alias(Object copy, Object source) {
+        ConversionContext context = CURRENT.get();
+        if (context != null && copy != source) {
+            context.sources.put(copy, context.sources.getOrDefault(source, source));
+        }
+    }
+
+    /**
+     * Returns the source the value has been copied from in the current conversion, the value itself if it is not a copy.
+     */
+    static Object sourceOf(Object value) {
+        ConversionContext context = CURRENT.get();
+        return context == null || value == null ? value : context.sources.getOrDefault(value, value);
+    }
+
+    private <R> R convertValue(Object source, Object target, Supplier<R> conversion) {
+        if (source == null) {
+            return conversion.get();
+        }
+        Map<Object, Object> targets = converted.get(source);
+        Object value = targets == null ? null : targets.get(target);
+        if (value == IN_PROGRESS) {
+            throw new IllegalStateException(String.format("Could not convert cyclic reference of %s to %s", source.getClass().getName(), target));
+        } else if (value != null) {
+            return (R) value;
+        }
+        put(source, target, IN_PROGRESS);
+        R result = conversion.get();
+        put(source, target, result);
+        return result;
+    }
+
+    private void put(Object source, Object target, Object value) {
+        converted.computeIfAbsent(source, k -> new HashMap<>()).put(target, value);
+    }
+}
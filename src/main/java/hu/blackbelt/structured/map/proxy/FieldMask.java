@@ -0,0 +1,152 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.base.Splitter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Selects the attributes exported by {@link MapHolder#toMap(FieldMask)} and {@link MapHolder#adaptTo(Class, FieldMask)}.
+ * The mask is compiled from dotted attribute name paths (for example <code>singleUserDetail.note</code>), which are
+ * either the included or the excluded attributes. A path selects the whole value of its last attribute, the nested
+ * paths of collection and map attributes apply to their elements and values.
+ *
+ * The maximum depth limits the levels of nested proxies, the attributes containing proxies are left out on the last
+ * level. The attributes of {@link hu.blackbelt.structured.map.proxy.annotation.Embedded} interfaces are on the level
+ * of their owner.
+ */
+public final class FieldMask {
+
+    public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+
+    public static final FieldMask ALL = new FieldMask(true, Collections.emptyMap(), UNLIMITED_DEPTH);
+
+    private final boolean exclusive;
+    // The nodes of the selected paths, null value for the last attribute of a path
+    private final Map<String, FieldMask> children;
+    private final int maxDepth;
+
+    private FieldMask(boolean exclusive, Map<String, FieldMask> children, int maxDepth) {
+        this.exclusive = exclusive;
+        this.children = children;
+        this.maxDepth = maxDepth;
+    }
+
+    public static FieldMask include(String... paths) {
+        return include(Arrays.asList(paths));
+    }
+
+    public static FieldMask include(Collection<String> paths) {
+        return compile(false, paths);
+    }
+
+    public static FieldMask exclude(String... paths) {
+        return exclude(Arrays.asList(paths));
+    }
+
+    public static FieldMask exclude(Collection<String> paths) {
+        return compile(true, paths);
+    }
+
+    /**
+     * Returns a mask selecting the same attributes up to the given level of nested proxies, 1 means the attributes
+     * of the proxy itself without the ones containing proxies.
+     */
+    public FieldMask withMaxDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Max depth has to be positive");
+        }
+        return new FieldMask(exclusive, children, maxDepth);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Returns whether the attribute is selected, its value can be still left out because of the depth limit.
+     */
+    public boolean includes(String attributeName) {
+        if (exclusive) {
+            return !children.containsKey(attributeName) || children.get(attributeName) != null;
+        }
+        return children.containsKey(attributeName);
+    }
+
+    /**
+     * Returns whether the values containing proxies are left out on this level.
+     */
+    public boolean isLastLevel() {
+        return maxDepth <= 1;
+    }
+
+    /**
+     * Returns the mask of the nested proxies of the given attribute.
+     */
+    public FieldMask child(String attributeName) {
+        return nested(attributeName, maxDepth == UNLIMITED_DEPTH ? UNLIMITED_DEPTH : maxDepth - 1);
+    }
+
+    /**
+     * Returns the mask of an embedded interface, which is on the same level as its owner.
+     */
+    FieldMask embedded(String attributeName) {
+        return nested(attributeName, maxDepth);
+    }
+
+    private FieldMask nested(String attributeName, int depth) {
+        FieldMask node = children.get(attributeName);
+        if (node == null) {
+            return depth == UNLIMITED_DEPTH ? ALL : new FieldMask(true, Collections.emptyMap(), depth);
+        }
+        return new FieldMask(exclusive, node.children, depth);
+    }
+
+    private static FieldMask compile(boolean exclusive, Collection<String> paths) {
+        Map<String, Object> tree = new HashMap<>();
+        for (String path : paths) {
+            Map<String, Object> node = tree;
+            for (Iterator<String> names = Splitter.on('.').split(path).iterator(); names.hasNext(); ) {
+                String name = names.next();
+                if (!names.hasNext()) {
+                    node.put(name, null);
+                } else if (node.containsKey(name) && node.get(name) == null) {
+                    break;
+                } else {
+                    node = (Map<String, Object>) node.computeIfAbsent(name, n -> new HashMap<String, Object>());
+                }
+            }
+        }
+        return toMask(exclusive, tree);
+    }
+
+    private static FieldMask toMask(boolean exclusive, Map<String, Object> tree) {
+        Map<String, FieldMask> children = new HashMap<>();
+        tree.forEach((name, node) -> children.put(name, node == null ? null : toMask(exclusive, (Map<String, Object>) node)));
+        return new FieldMask(exclusive, Collections.unmodifiableMap(children), UNLIMITED_DEPTH);
+    }
+}
@@ -20,8 +20,9 @@ package hu.blackbelt.structured.map.proxy;
  * #L%
  */
 
-import hu.blackbelt.structured.map.proxy.util.ReflectionUtil;
+import hu.blackbelt.structured.map.proxy.util.ClassAccessors;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
@@ -85,6 +86,7 @@ public final class MapBuilderProxy<B, T> implements InvocationHandler {
             this.params.setNullSafeCollection(params.isNullSafeCollection());
             this.params.setEnumMappingMethod(params.getEnumMappingMethod());
             this.params.setMapNullToOptionalAbsent(params.isMapNullToOptionalAbsent());
+            this.params.setConcurrent(params.isConcurrent());
             return this;
         }
 
@@ -108,6 +110,11 @@ public final class MapBuilderProxy<B, T> implements InvocationHandler {
             return this;
         }
 
+        public Builder<B, T> withConcurrent(boolean concurrent) {
+            this.params.setConcurrent(concurrent);
+            return this;
+        }
+
         public B newInstance() {
             if (targetInstance == null) {
                 targetInstance = MapProxy.builder(targetClass)
@@ -133,9 +140,9 @@ public final class MapBuilderProxy<B, T> implements InvocationHandler {
     public Object invoke(Object proxy, Method m, Object[] args)
     throws Throwable {
         if (m.getName().startsWith("build")) {
-            return MapProxy.builder(targetClass).withMap(((MapHolder) internal).$internalMap()).withParams(params).newInstance();
+            return newTargetInstance();
         } else {
-            T newInstance = MapProxy.builder(targetClass).withMap(((MapHolder) internal).$internalMap()).withParams(params).newInstance();
+            T newInstance = newTargetInstance();
 
             B b = MapBuilderProxy.builder(builderClass, targetClass).withParams(params).withBuilderMethodPrefix(prefix).withTargetInstance(newInstance).newInstance();
 
@@ -148,12 +155,13 @@ public final class MapBuilderProxy<B, T> implements InvocationHandler {
                 attrName = Character.toUpperCase(attrName.charAt(MapProxy.METHOD_ADD.length())) + attrName.substring(MapProxy.METHOD_ADD.length() + 1);
                 methodPrefix = MapProxy.METHOD_ADD;
             }
-            Method method = null;
+            ClassAccessors accessors = ClassAccessors.of(newInstance.getClass());
+            MethodHandle method;
 
             if (methodPrefix.equals(MapProxy.METHOD_ADD)) {
-                method = ReflectionUtil.findAdder(newInstance.getClass(), attrName);
+                method = accessors.getAdderHandle(attrName);
             } else {
-                method = ReflectionUtil.findSetter(newInstance.getClass(), attrName);
+                method = accessors.getSetterHandle(attrName);
             }
 
             method.invoke(newInstance, args);
@@ -161,4 +169,13 @@ public final class MapBuilderProxy<B, T> implements InvocationHandler {
             return b;
         }
     }
+
+    private T newTargetInstance() {
+        MapProxy handler = MapProxy.getHandler(internal);
+        MapProxy.Builder<T> builder = MapProxy.builder(targetClass).withParams(params);
+        if (handler != null) {
+            return builder.withCopyOf(handler).newInstance();
+        }
+        return builder.withMap(((MapHolder) internal).$internalMap()).newInstance();
+    }
 }
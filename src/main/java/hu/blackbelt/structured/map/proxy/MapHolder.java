@@ -21,14 +21,76 @@ package hu.blackbelt.structured.map.proxy;
  */
 
 import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
 
+/**
+ * Implemented by the proxies created by {@link MapProxy}. The methods other than {@code toMap()}, the map accessors
+ * and {@code adaptTo(Class)} have default implementations throwing {@link UnsupportedOperationException} for
+ * the other implementations, the proxies implement all of them.
+ */
 public interface MapHolder {
 
     Map<String, Object> toMap();
 
+    /**
+     * Returns the map representation of the attributes selected by the mask. The other attributes are not converted.
+     */
+    default Map<String, Object> toMap(FieldMask mask) {
+        throw new UnsupportedOperationException("toMap");
+    }
+
     Map<String, Object> $originalMap();
 
     Map<String, Object> $internalMap();
 
     <T> T adaptTo(Class<T> clazz);
+
+    /**
+     * Adapts the projection of the attributes selected by the mask, which is a copy in case of interfaces too.
+     */
+    default <T> T adaptTo(Class<T> clazz, FieldMask mask) {
+        throw new UnsupportedOperationException("adaptTo");
+    }
+
+    /**
+     * Returns the map keys modified since the proxy was created or {@link #markClean()} was called,
+     * including the keys whose nested proxies were modified.
+     */
+    default Set<String> changedKeys() {
+        throw new UnsupportedOperationException("changedKeys");
+    }
+
+    /**
+     * Returns the changed keys with their values in the same representation as {@link #toMap()}.
+     * Nested proxies which were modified in place are represented by their own delta map.
+     */
+    default Map<String, Object> toDeltaMap() {
+        throw new UnsupportedOperationException("toDeltaMap");
+    }
+
+    /**
+     * Forgets the modifications of this proxy and its nested proxies.
+     */
+    default void markClean() {
+        throw new UnsupportedOperationException("markClean");
+    }
+
+    /**
+     * Replaces the value of the given attribute with the result of the function and returns it. The function
+     * gets and returns the value as the getter and the setter of the attribute do, without {@link java.util.Optional}.
+     * In concurrent mode the update is atomic and the function may be called more than once.
+     */
+    default <V> V compute(String attributeName, UnaryOperator<V> function) {
+        throw new UnsupportedOperationException("compute");
+    }
+
+    /**
+     * Makes this proxy and the proxies reachable from it immutable in place, without copying the proxies.
+     * The collections and maps are copied read-only, the mutators throw {@link IllegalStateException} afterwards.
+     * The frozen proxies can be shared between threads once they are safely published.
+     */
+    default void freeze() {
+        throw new UnsupportedOperationException("freeze");
+    }
 }
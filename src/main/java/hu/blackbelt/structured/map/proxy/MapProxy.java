@@ -20,15 +20,18 @@ package hu.blackbelt.structured.map.proxy;
  * #L%
  */
 
+import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import hu.blackbelt.structured.map.proxy.annotation.Embedded;
 import hu.blackbelt.structured.map.proxy.annotation.Key;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -45,7 +48,10 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
@@ -56,8 +62,16 @@ public final class MapProxy implements InvocationHandler {
     public static final String METHOD_GET = "get";
     public static final String METHOD_ADD = "addTo";
     public static final String METHOD_REMOVE = "removeFrom";
+    public static final String METHOD_ADD_ALL = "addAllTo";
+    public static final String METHOD_REMOVE_ALL = "removeAllFrom";
+    public static final String METHOD_REMOVE_IF = "removeIfFrom";
     public static final String METHOD_IS = "is";
     public static final String METHOD_TO_MAP = "toMap";
+    public static final String METHOD_CHANGED_KEYS = "changedKeys";
+    public static final String METHOD_TO_DELTA_MAP = "toDeltaMap";
+    public static final String METHOD_MARK_CLEAN = "markClean";
+    public static final String METHOD_COMPUTE = "compute";
+    public static final String METHOD_FREEZE = "freeze";
     public static final String METHOD_GET_ORIGINAL_MAP = "$originalMap";
     public static final String METHOD_GET_INTERNAL_MAP = "$internalMap";
     public static final String METHOD_TO_STRING = "toString";
@@ -70,6 +84,10 @@ public final class MapProxy implements InvocationHandler {
     public static final String STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND = "structuredMapProxyCacheExpireInSecond";
     public static final String DEFULT_STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND = "60";
 
+    public static final String STRUCTURED_MAP_PROXY_TO_STRING_MAX_DEPTH = "structuredMapProxyToStringMaxDepth";
+    public static final String STRUCTURED_MAP_PROXY_TO_STRING_MAX_ELEMENTS = "structuredMapProxyToStringMaxElements";
+    public static final String STRUCTURED_MAP_PROXY_TO_STRING_MAX_LENGTH = "structuredMapProxyToStringMaxLength";
+
     private static final Map<Class<?>, Class<?>> PRIMITIVES_TO_WRAPPERS
             = new ImmutableMap.Builder<Class<?>, Class<?>>()
             .put(boolean.class, Boolean.class)
@@ -83,26 +101,102 @@ public final class MapProxy implements InvocationHandler {
             .put(void.class, Void.class)
             .build();
 
+    private static final Map<Class<?>, Class<?>> WRAPPERS_TO_PRIMITIVES = PRIMITIVES_TO_WRAPPERS.entrySet().stream()
+            .collect(ImmutableMap.toImmutableMap(Map.Entry::getValue, Map.Entry::getKey));
+
     private Map<String, ?> original;
     private Map<String, Object> internal;
 
     Class clazz;
     MapProxyParams params;
 
+    private BitSet changed;
+    private Set<String> changedUnknownKeys;
+
+    /**
+     * The storage is not converted to the attribute types by the constructor (views, trusted maps, cursors),
+     * the values are checked and converted when they are read.
+     */
+    private boolean lazyConversion;
+    /**
+     * The memoized nested values returned by the getters, so a getter returns the same instance as long as the
+     * stored value is not replaced. They are thread-safe if the proxy can be shared between threads.
+     */
+    private volatile Map<String, Object[]> viewValues;
+    private MapProxy storageOwner;
+    private volatile Map<String, Object> embeddedViews;
+    private volatile Map<String, Object[]> optionalValues;
+    private Map<Method, GetterInfo> getterInfos;
+    private Map<String, OwnedCollection> ownedCollections;
+    /**
+     * The storage is shared with views created by adaptTo, so it can contain values of the attribute types of the
+     * views.
+     */
+    private boolean storageShared;
+    /**
+     * The proxy a view created by adaptTo shares the storage with. It converts its values lazily only after the
+     * view has written the storage, the values written by the view may not have its attribute types.
+     */
+    private MapProxy viewSource;
+    /**
+     * The interner this proxy is the canonical instance of, the hash code of interned proxies is cached.
+     */
+    MapProxyInterner interner;
+    private int hash;
+    /**
+     * The rendered strings of immutable proxies, with the default and the unlimited format.
+     */
+    private volatile String cachedString;
+    private volatile String cachedFullString;
+    /**
+     * Set once the values reachable from this immutable proxy are verified to be immutable.
+     */
+    private volatile boolean graphImmutable;
+
     public static <T> Builder<T> builder(Class<T> clazz) {
         return new Builder<>(clazz);
     }
 
+    /**
+     * Creates a cursor with a single read-only proxy which can be bound to the rows of a result set one by one.
+     */
+    public static <T> MapProxyCursor<T> cursor(Class<T> clazz) {
+        return cursor(clazz, new MapProxyParams());
+    }
+
+    public static <T> MapProxyCursor<T> cursor(Class<T> clazz, MapProxyParams params) {
+        MapProxy handler = new MapProxy(clazz, toReadOnlyParams(params), Collections.emptyMap());
+        handler.lazyConversion = true;
+        return new MapProxyCursor<>(newProxyInstance(clazz, handler), handler);
+    }
+
+    static MapProxyParams toReadOnlyParams(MapProxyParams params) {
+        MapProxyParams readOnlyParams = new MapProxyParams();
+        readOnlyParams.setImmutable(true);
+        readOnlyParams.setNullSafeCollection(params.isNullSafeCollection());
+        readOnlyParams.setEnumMappingMethod(params.getEnumMappingMethod());
+        readOnlyParams.setMapNullToOptionalAbsent(params.isMapNullToOptionalAbsent());
+        readOnlyParams.setInterner(params.getInterner());
+        return readOnlyParams;
+    }
+
+    /**
+     * Creates a builder for a copy of the given proxy. The storage of an immutable proxy is shared when the copy is
+     * immutable too, otherwise the values are converted like the map returned by {@link MapHolder#toMap()}.
+     */
     public static <T> Builder<T> builder(MapProxy proxy) {
         return new Builder(proxy.clazz)
                 .withParams(proxy.params)
-                .withMap((Map<String, ?>) proxy.invokeToMap());
+                .withCopyOf(proxy);
     }
 
     public static class Builder<T> {
         private MapProxyParams params = new MapProxyParams();
         private final Class<T> clazz;
         private Map<String, ?> map = Collections.emptyMap();
+        private Object source;
+        private boolean trusted = false;
+        private MapProxy copySource;
 
         private Builder(Class<T> clazz) {
             this.clazz = clazz;
@@ -113,6 +207,8 @@ public final class MapProxy implements InvocationHandler {
             this.params.setNullSafeCollection(params.isNullSafeCollection());
             this.params.setEnumMappingMethod(params.getEnumMappingMethod());
             this.params.setMapNullToOptionalAbsent(params.isMapNullToOptionalAbsent());
+            this.params.setConcurrent(params.isConcurrent());
+            this.params.setInterner(params.getInterner());
             return this;
         }
 
@@ -128,11 +224,43 @@ public final class MapProxy implements InvocationHandler {
 
         public Builder<T> withMap(Map<String, ?> map) {
             this.map = map;
+            this.source = map;
+            this.trusted = false;
+            this.copySource = null;
+            return this;
+        }
+
+        /**
+         * Uses a map whose values already have the attribute types (for example the internal map of another proxy
+         * of the same interface). The values are not converted or validated, only the ones which do not fit the
+         * attribute types are converted when they are read. An {@link ImmutableMap} is used without copy in
+         * immutable mode.
+         */
+        public Builder<T> withTrustedMap(Map<String, ?> map) {
+            this.map = map;
+            this.source = null;
+            this.trusted = true;
+            this.copySource = null;
             return this;
         }
 
         public Builder<T> withBean(Object object) {
             this.map = beanToProxyMap(clazz, params, object);
+            this.source = object;
+            this.trusted = false;
+            this.copySource = null;
+            return this;
+        }
+
+        /**
+         * Uses the values of the given proxy. The storage of an immutable proxy is shared when the copy is
+         * immutable too, otherwise the values are converted like the map returned by toMap.
+         */
+        Builder<T> withCopyOf(MapProxy proxy) {
+            this.map = Collections.emptyMap();
+            this.source = null;
+            this.trusted = false;
+            this.copySource = proxy;
             return this;
         }
 
@@ -146,24 +274,60 @@ public final class MapProxy implements InvocationHandler {
             return this;
         }
 
+        public Builder<T> withConcurrent(boolean concurrent) {
+            this.params.setConcurrent(concurrent);
+            return this;
+        }
+
+        public Builder<T> withInterner(MapProxyInterner interner) {
+            this.params.setInterner(interner);
+            return this;
+        }
+
         public T newInstance() {
-            return MapProxy.newInstance(map, clazz, params);
+            Map<String, ?> values = map;
+            Object valuesSource = source;
+            if (copySource != null) {
+                if (copySource.clazz == clazz && copySource.params.isImmutable() && params.isImmutable()) {
+                    return intern(MapProxy.newTrustedInstance(copySource.internal, clazz, params));
+                }
+                values = (Map<String, ?>) copySource.invokeToMap();
+                valuesSource = values;
+            } else if (trusted) {
+                return intern(MapProxy.newTrustedInstance(map, clazz, params));
+            }
+            // The empty maps are not memoized, the sharing of an empty mutable proxy would not be expected
+            Map<String, ?> converted = values;
+            Object key = values == null || values.isEmpty() ? null : ConversionContext.sourceOf(valuesSource);
+            return ConversionContext.convert(key, clazz, () -> intern(MapProxy.newInstance(key, converted, clazz, params)));
         }
-    }
 
-    private static <T> T newInstance(Map<String, ?> map, Class clazz, MapProxyParams params) {
-        try {
-            List<Class> interfaces = getWithSuperClasses(clazz, MapHolder.class);
-            return (T) java.lang.reflect.Proxy.newProxyInstance(
-                    new CompositeClassLoader(clazz.getClassLoader(), MapHolder.class.getClassLoader()),
-                    interfaces.toArray(new Class[interfaces.size()]),
-                    new MapProxy(clazz, map, params));
-        } catch (IntrospectionException e) {
-            throw new IllegalArgumentException("Could not create instance", e);
+        private T intern(T proxy) {
+            return params.isImmutable() && params.getInterner() != null ? params.getInterner().intern(proxy) : proxy;
         }
     }
 
-    private static List<Class> getWithSuperClasses(Class ...classes) {
+    private static <T> T newInstance(Object source, Map<String, ?> map, Class clazz, MapProxyParams params) {
+        MapProxy handler = new MapProxy(clazz, params);
+        T proxy = (T) newProxyInstance(clazz, handler);
+        // Registered before the values are converted, so the cyclic references of the source resolve to the proxy
+        ConversionContext.register(source, clazz, proxy);
+        handler.original = map;
+        handler.initStorage(toProxyMap(clazz, params, (Map<String, Object>) map));
+        return proxy;
+    }
+
+    private static <T> T newTrustedInstance(Map<String, ?> map, Class clazz, MapProxyParams params) {
+        Map<String, Object> storage = params.isImmutable() && map instanceof ImmutableMap
+                ? (Map<String, Object>) map
+                : new LinkedHashMap<>(map);
+        MapProxy handler = new MapProxy(clazz, params, storage);
+        handler.original = map;
+        handler.lazyConversion = true;
+        return (T) newProxyInstance(clazz, handler);
+    }
+
+    static List<Class> getWithSuperClasses(Class ...classes) {
         List<Class> out = new ArrayList<>();
         for (Class o : classes) {
             Class subclass = o;
@@ -173,101 +337,147 @@ public final class MapProxy implements InvocationHandler {
         return out;
     }
 
-    @AllArgsConstructor
     @Getter
-    private static class AttributeInfo {
+    static class AttributeInfo {
         String mapKey;
         Class propertyType;
         ParameterizedType parameterType;
         PropertyDescriptor propertyDescriptor;
         boolean composite = false;
+        /**
+         * The raw types of the type arguments, getActualTypeArguments copies them on every call.
+         */
+        @Getter(AccessLevel.NONE)
+        private final Class[] typeArguments;
+
+        AttributeInfo(String mapKey, Class propertyType, ParameterizedType parameterType, PropertyDescriptor propertyDescriptor, boolean composite) {
+            this.mapKey = mapKey;
+            this.propertyType = propertyType;
+            this.parameterType = parameterType;
+            this.propertyDescriptor = propertyDescriptor;
+            this.composite = composite;
+            if (parameterType != null) {
+                Type[] arguments = parameterType.getActualTypeArguments();
+                typeArguments = new Class[arguments.length];
+                for (int i = 0; i < arguments.length; i++) {
+                    if (arguments[i] instanceof Class) {
+                        typeArguments[i] = (Class) arguments[i];
+                    } else if (arguments[i] instanceof ParameterizedType) {
+                        typeArguments[i] = (Class) ((ParameterizedType) arguments[i]).getRawType();
+                    }
+                }
+            } else {
+                typeArguments = null;
+            }
+        }
+
+        Class getTypeArgument(int argnum) {
+            Class typeArgument = typeArguments[argnum];
+            return typeArgument != null ? typeArgument : getRawType(parameterType, argnum);
+        }
     }
 
     private static CacheLoader<Class, Map<String, AttributeInfo>> typeInfoCacheLoader = new CacheLoader<Class, Map<String, AttributeInfo>>() {
         @Override
         public Map<String, AttributeInfo> load(Class sourceClass) throws Exception {
-            Map<String, AttributeInfo> targetTypes = new ConcurrentHashMap<>();
-            List<Class> classesToIntrospect = getWithSuperClasses(sourceClass);
-            Set<PropertyDescriptor> propertyDescriptors = new HashSet<>();
-            for (Class c : classesToIntrospect) {
-                for (PropertyDescriptor propertyDescriptor : Introspector.getBeanInfo(c).getPropertyDescriptors()) {
-                    propertyDescriptors.add(propertyDescriptor);
-                }
+            Map<String, AttributeInfo> snapshot = MapProxySchema.loadTypeInfo(sourceClass);
+            if (snapshot != null) {
+                return snapshot;
             }
+            return introspectTypeInfo(sourceClass);
+        }
+    };
 
-            for (PropertyDescriptor propertyDescriptor : propertyDescriptors) {
-                String attrName = Character.toLowerCase(propertyDescriptor.getName().charAt(0)) + propertyDescriptor.getName().substring(1);
-                final Class propertyType = propertyDescriptor.getPropertyType();
-                Optional<ParameterizedType> parametrizedType = getGetterOrSetterParameterizedType(propertyDescriptor);
-
-                String mapKey = attrName;
-                boolean composite = false;
-                if (propertyDescriptor.getReadMethod() != null
-                        && propertyDescriptor.getReadMethod().getDeclaredAnnotation(Embedded.class) != null
-                        && propertyDescriptor.getReadMethod().getReturnType().isInterface()
-                ) {
-                    composite = true;
-                }
+    static Map<String, AttributeInfo> introspectTypeInfo(Class sourceClass) throws IntrospectionException {
+        Map<String, AttributeInfo> targetTypes = new ConcurrentHashMap<>();
+        List<Class> classesToIntrospect = getWithSuperClasses(sourceClass);
+        Set<PropertyDescriptor> propertyDescriptors = new HashSet<>();
+        for (Class c : classesToIntrospect) {
+            for (PropertyDescriptor propertyDescriptor : Introspector.getBeanInfo(c).getPropertyDescriptors()) {
+                propertyDescriptors.add(propertyDescriptor);
+            }
+        }
 
-                if (propertyDescriptor.getReadMethod() != null && propertyDescriptor.getReadMethod().getDeclaredAnnotation(Key.class) != null) {
-                    mapKey = propertyDescriptor.getReadMethod().getDeclaredAnnotation(Key.class).name();
-                } else if (propertyDescriptor.getWriteMethod() != null && propertyDescriptor.getWriteMethod().getDeclaredAnnotation(Key.class) != null) {
-                    mapKey = propertyDescriptor.getWriteMethod().getDeclaredAnnotation(Key.class).name();
-                }
+        for (PropertyDescriptor propertyDescriptor : propertyDescriptors) {
+            String attrName = Character.toLowerCase(propertyDescriptor.getName().charAt(0)) + propertyDescriptor.getName().substring(1);
+            final Class propertyType = propertyDescriptor.getPropertyType();
+            Optional<ParameterizedType> parametrizedType = getGetterOrSetterParameterizedType(propertyDescriptor);
+
+            String mapKey = attrName;
+            boolean composite = false;
+            if (propertyDescriptor.getReadMethod() != null
+                    && propertyDescriptor.getReadMethod().getDeclaredAnnotation(Embedded.class) != null
+                    && propertyDescriptor.getReadMethod().getReturnType().isInterface()
+            ) {
+                composite = true;
+            }
 
-                targetTypes.put(attrName, new AttributeInfo(mapKey, propertyType, parametrizedType.orElse(null), propertyDescriptor, composite));
+            if (propertyDescriptor.getReadMethod() != null && propertyDescriptor.getReadMethod().getDeclaredAnnotation(Key.class) != null) {
+                mapKey = propertyDescriptor.getReadMethod().getDeclaredAnnotation(Key.class).name();
+            } else if (propertyDescriptor.getWriteMethod() != null && propertyDescriptor.getWriteMethod().getDeclaredAnnotation(Key.class) != null) {
+                mapKey = propertyDescriptor.getWriteMethod().getDeclaredAnnotation(Key.class).name();
             }
 
-            Arrays.stream(sourceClass.getMethods()).
-                    filter(m -> !m.getName().startsWith(METHOD_GET)
-                            && m.getParameterCount() == 0
-                            && m.getReturnType().isInterface()
-                            && m.isAnnotationPresent(Embedded.class)).forEach(m -> {
-                                targetTypes.put(m.getName(), new AttributeInfo(m.getName(), m.getReturnType(), null, null, true));
-                    });
-            return targetTypes;
+            targetTypes.put(attrName, new AttributeInfo(mapKey, propertyType, parametrizedType.orElse(null), propertyDescriptor, composite));
         }
-    };
+
+        Arrays.stream(sourceClass.getMethods()).
+                filter(m -> !m.getName().startsWith(METHOD_GET)
+                        && m.getParameterCount() == 0
+                        && m.getReturnType().isInterface()
+                        && m.isAnnotationPresent(Embedded.class)).forEach(m -> {
+                            targetTypes.put(m.getName(), new AttributeInfo(m.getName(), m.getReturnType(), null, null, true));
+                });
+        return targetTypes;
+    }
 
     private static CacheLoader<Class, Map<String, Method>> staticMethodCacheLoader = new CacheLoader<Class, Map<String, Method>>() {
         @Override
         public Map<String, Method> load(Class clazz) throws Exception {
-            Optional<Method> equals = Optional.empty();
-            Optional<Method> toString = Optional.empty();
-            Optional<Method> hashCode = Optional.empty();
-
-            for (Class cl : getWithSuperClasses(clazz)) {
-                if (equals.isEmpty()) {
-                    equals = Arrays.stream(cl.getMethods()).filter(m ->
-                            m.getName().equals(METHOD_EQUALS)
-                                    && m.getParameterCount() == 2
-                                    && m.getParameters()[0].getType().isAssignableFrom(clazz)
-                                    && (boolean.class.isAssignableFrom(m.getReturnType())
-                                    || Boolean.class.isAssignableFrom(m.getReturnType()))).findFirst();
-                }
-                if (toString.isEmpty()) {
-                    toString = Arrays.stream(cl.getMethods()).filter(m ->
-                            m.getName().equals(METHOD_TO_STRING)
-                                    && m.getParameterCount() == 1
-                                    && m.getParameters()[0].getType().isAssignableFrom(clazz)
-                                    && String.class.isAssignableFrom(m.getReturnType())).findFirst();
-                }
-                if (hashCode.isEmpty()) {
-                    hashCode = Arrays.stream(cl.getMethods()).filter(m ->
-                            m.getName().equals(METHOD_HASH_CODE)
-                                    && m.getParameterCount() == 1
-                                    && m.getParameters()[0].getType().isAssignableFrom(clazz)
-                                    && int.class.isAssignableFrom(m.getReturnType())).findFirst();
-                }
+            Map<String, Method> snapshot = MapProxySchema.loadStaticMethods(clazz);
+            if (snapshot != null) {
+                return snapshot;
             }
-            Map<String, Method> ret = new HashMap<>();
-            equals.ifPresent((c) -> ret.put(METHOD_EQUALS, c));
-            toString.ifPresent((c) -> ret.put(METHOD_TO_STRING, c));
-            hashCode.ifPresent((c) -> ret.put(METHOD_HASH_CODE, c));
-            return ret;
+            return introspectStaticMethods(clazz);
         }
     };
 
+    static Map<String, Method> introspectStaticMethods(Class clazz) {
+        Optional<Method> equals = Optional.empty();
+        Optional<Method> toString = Optional.empty();
+        Optional<Method> hashCode = Optional.empty();
+
+        for (Class cl : getWithSuperClasses(clazz)) {
+            if (equals.isEmpty()) {
+                equals = Arrays.stream(cl.getMethods()).filter(m ->
+                        m.getName().equals(METHOD_EQUALS)
+                                && m.getParameterCount() == 2
+                                && m.getParameters()[0].getType().isAssignableFrom(clazz)
+                                && (boolean.class.isAssignableFrom(m.getReturnType())
+                                || Boolean.class.isAssignableFrom(m.getReturnType()))).findFirst();
+            }
+            if (toString.isEmpty()) {
+                toString = Arrays.stream(cl.getMethods()).filter(m ->
+                        m.getName().equals(METHOD_TO_STRING)
+                                && m.getParameterCount() == 1
+                                && m.getParameters()[0].getType().isAssignableFrom(clazz)
+                                && String.class.isAssignableFrom(m.getReturnType())).findFirst();
+            }
+            if (hashCode.isEmpty()) {
+                hashCode = Arrays.stream(cl.getMethods()).filter(m ->
+                        m.getName().equals(METHOD_HASH_CODE)
+                                && m.getParameterCount() == 1
+                                && m.getParameters()[0].getType().isAssignableFrom(clazz)
+                                && int.class.isAssignableFrom(m.getReturnType())).findFirst();
+            }
+        }
+        Map<String, Method> ret = new HashMap<>();
+        equals.ifPresent((c) -> ret.put(METHOD_EQUALS, c));
+        toString.ifPresent((c) -> ret.put(METHOD_TO_STRING, c));
+        hashCode.ifPresent((c) -> ret.put(METHOD_HASH_CODE, c));
+        return ret;
+    }
+
     private static LoadingCache<Class, Map<String, AttributeInfo>> typeInfoCache = CacheBuilder
             .newBuilder()
             .expireAfterAccess(Long.parseLong(System.getProperty(STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND, DEFULT_STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND)), TimeUnit.SECONDS)
@@ -279,13 +489,412 @@ public final class MapProxy implements InvocationHandler {
             .build(staticMethodCacheLoader);
 
 
-    private <T> MapProxy(Class clazz, Map<String, ?> map, MapProxyParams params) throws IntrospectionException {
-        original = map;
+    private static CacheLoader<Class, Map<String, AttributeInfo>> storageInfoCacheLoader = new CacheLoader<Class, Map<String, AttributeInfo>>() {
+        @Override
+        public Map<String, AttributeInfo> load(Class sourceClass) throws Exception {
+            Map<String, AttributeInfo> storageInfo = new LinkedHashMap<>();
+            typeInfoCache.get(sourceClass).forEach((attrName, attrInfo) -> {
+                if (attrInfo.isComposite() && attrInfo.getPropertyType().isInterface()) {
+                    try {
+                        storageInfoCache.get(attrInfo.getPropertyType()).forEach(storageInfo::putIfAbsent);
+                    } catch (ExecutionException e) {
+                        throw new RuntimeException(e);
+                    }
+                } else if (!attrInfo.isComposite()) {
+                    storageInfo.putIfAbsent(attrInfo.getMapKey(), attrInfo);
+                }
+            });
+            return Collections.unmodifiableMap(storageInfo);
+        }
+    };
+
+    private static LoadingCache<Class, Map<String, AttributeInfo>> storageInfoCache = CacheBuilder
+            .newBuilder()
+            .expireAfterAccess(Long.parseLong(System.getProperty(STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND, DEFULT_STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND)), TimeUnit.SECONDS)
+            .build(storageInfoCacheLoader);
+
+    private static LoadingCache<Class, Map<String, Integer>> storageIndexCache = CacheBuilder
+            .newBuilder()
+            .expireAfterAccess(Long.parseLong(System.getProperty(STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND, DEFULT_STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND)), TimeUnit.SECONDS)
+            .build(new CacheLoader<Class, Map<String, Integer>>() {
+                @Override
+                public Map<String, Integer> load(Class sourceClass) throws Exception {
+                    Map<String, Integer> index = new HashMap<>();
+                    for (String mapKey : storageInfoCache.get(sourceClass).keySet()) {
+                        index.put(mapKey, index.size());
+                    }
+                    return index;
+                }
+            });
+
+    private MapProxy(Class clazz, MapProxyParams params) {
+        this.clazz = clazz;
+        this.params = params;
+    }
+
+    private MapProxy(Class clazz, MapProxyParams params, Map<String, Object> storage) {
+        original = storage;
 
         this.clazz = clazz;
         this.params = params;
 
-        internal = toProxyMap(clazz, params, (Map<String, Object>) map);
+        initStorage(storage);
+    }
+
+    private void initStorage(Map<String, Object> storage) {
+        if (params.isConcurrent() && !params.isImmutable()) {
+            internal = storage instanceof ConcurrentStorageMap ? storage : new ConcurrentStorageMap(storage);
+            viewValues = new ConcurrentHashMap<>();
+            embeddedViews = new ConcurrentHashMap<>();
+        } else {
+            internal = storage;
+        }
+    }
+
+    /**
+     * Returns the storage if its values have the attribute types (the getters return them as is, apart from
+     * {@link Optional} and null safe collections), otherwise null.
+     */
+    Map<String, Object> getConvertedStorage() {
+        return lazyConversion ? null : internal;
+    }
+
+    static Map<String, AttributeInfo> getTypeInfo(Class clazz) {
+        try {
+            return typeInfoCache.get(clazz);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the attributes stored in the map of the given type keyed by map key, including the
+     * attributes of the {@link Embedded} interfaces.
+     */
+    static Map<String, AttributeInfo> getStorageInfo(Class clazz) {
+        try {
+            return storageInfoCache.get(clazz);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates a proxy which uses the given map as its storage as is. The values of the map have to be
+     * already converted to the attribute types, no conversion or copy is made.
+     */
+    static <T> T newStorageInstance(Class<T> clazz, MapProxyParams params, Map<String, Object> storage) {
+        return newProxyInstance(clazz, new MapProxy(clazz, params, storage));
+    }
+
+    private static <T> T newProxyInstance(Class<T> clazz, MapProxy handler) {
+        return (T) java.lang.reflect.Proxy.newProxyInstance(getProxyClassLoader(clazz), getProxyInterfaces(clazz), handler);
+    }
+
+    /**
+     * Returns the interfaces implemented by the proxies of the given type in the order they are passed to
+     * {@link java.lang.reflect.Proxy}. The same list has to be registered in the proxy configuration of native images.
+     */
+    static Class[] getProxyInterfaces(Class clazz) {
+        return proxyInterfacesCache.getUnchecked(clazz).clone();
+    }
+
+    private static ClassLoader getProxyClassLoader(Class clazz) {
+        ClassLoader classLoader = clazz.getClassLoader();
+        if (classLoader == null) {
+            classLoader = MapHolder.class.getClassLoader();
+        }
+        return proxyClassLoaderCache.getUnchecked(classLoader);
+    }
+
+    private static LoadingCache<Class, Class[]> proxyInterfacesCache = CacheBuilder
+            .newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Class, Class[]>() {
+                @Override
+                public Class[] load(Class clazz) {
+                    Set<Class> interfaces = new LinkedHashSet<>(getWithSuperClasses(clazz, MapHolder.class));
+                    return interfaces.toArray(new Class[interfaces.size()]);
+                }
+            });
+
+    /**
+     * The class loader of the proxied interface is used when it sees the same {@link MapHolder}, otherwise a
+     * {@link CompositeClassLoader} shared by all interfaces of that class loader. Creating a new class loader
+     * for every instance would define a new proxy class each time, which is not supported by native images.
+     */
+    private static LoadingCache<ClassLoader, ClassLoader> proxyClassLoaderCache = CacheBuilder
+            .newBuilder()
+            .weakKeys()
+            .weakValues()
+            .build(new CacheLoader<ClassLoader, ClassLoader>() {
+                @Override
+                public ClassLoader load(ClassLoader classLoader) {
+                    if (isMapHolderVisible(classLoader)) {
+                        return classLoader;
+                    }
+                    return new CompositeClassLoader(classLoader, MapHolder.class.getClassLoader());
+                }
+            });
+
+    private static boolean isMapHolderVisible(ClassLoader classLoader) {
+        try {
+            return Class.forName(MapHolder.class.getName(), false, classLoader) == MapHolder.class;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the storage of this proxy and of its embedded views, and drops the values converted from the
+     * previous storage.
+     */
+    void bind(Map<String, ?> storage) {
+        original = storage;
+        internal = (Map<String, Object>) storage;
+        cachedString = null;
+        cachedFullString = null;
+        graphImmutable = false;
+        changed = null;
+        changedUnknownKeys = null;
+        ownedCollections = null;
+        if (viewValues != null) {
+            viewValues.clear();
+        }
+        // The cached optionals are kept, they are checked against the value of the new storage when they are read
+        if (embeddedViews != null) {
+            for (Object view : embeddedViews.values()) {
+                getHandler(view).bind(storage);
+            }
+        }
+    }
+
+    /**
+     * Creates a proxy of the given interface over the storage of this proxy. The values are converted to the
+     * attribute types of the view only when they are read.
+     */
+    private <T> T newView(Class<T> viewClass) {
+        MapProxy view = new MapProxy(viewClass, params, internal);
+        view.lazyConversion = true;
+        view.storageShared = true;
+        storageShared = true;
+        MapProxy source = this;
+        while (source.viewSource != null || source.storageOwner != null) {
+            source = source.viewSource != null ? source.viewSource : source.storageOwner;
+        }
+        source.storageShared = true;
+        view.viewSource = source;
+        return newProxyInstance(viewClass, view);
+    }
+
+    private boolean isStorageShared() {
+        for (MapProxy handler = this; handler != null; handler = handler.storageOwner) {
+            if (handler.storageShared) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void storageWritten() {
+        if (viewSource != null && !viewSource.lazyConversion) {
+            viewSource.lazyConversion = true;
+        }
+    }
+
+    /**
+     * Returns true if the storage of this proxy is a mutable map of its own, so it can be copied by
+     * {@link #copyValue(Object)} without conversion.
+     */
+    private boolean isCopyable() {
+        return !params.isImmutable() && !params.isConcurrent() && !storageShared && storageOwner == null;
+    }
+
+    /**
+     * Creates a clean proxy with a copy of the storage of this proxy. The storage and the nested instances of
+     * this proxy are not modified, so the references read from it before the copy stay attached to it.
+     */
+    private <T> T newCopy(MapProxyParams copyParams) {
+        Map<String, Object> values = new LinkedHashMap<>(internal.size() * 4 / 3 + 1);
+        internal.forEach((mapKey, value) -> values.put(mapKey, copyValue(value)));
+        MapProxy copy = new MapProxy(clazz, copyParams, values);
+        copy.lazyConversion = lazyConversion;
+        return (T) newProxyInstance(clazz, copy);
+    }
+
+    /**
+     * Returns a private copy of a value if it can be modified through the getters. The mutable nested proxies
+     * are copied recursively, the collections and maps are copied with their elements, the read-only ones only
+     * if they contain mutable proxies.
+     */
+    static Object copyValue(Object value) {
+        MapProxy handler = getHandler(value);
+        if (handler != null) {
+            if (handler.params.isImmutable()) {
+                return value;
+            }
+            if (handler.isCopyable()) {
+                return handler.newCopy(handler.params);
+            }
+            return newTrustedInstance((Map<String, ?>) handler.invokeToMap(), handler.clazz, handler.params);
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            boolean readOnly = isReadOnly(collection);
+            if (readOnly && collection.stream().noneMatch(MapProxy::isMutableProxy)) {
+                if (value instanceof OwnedView) {
+                    // The owner detaches the view before its next write
+                    ((OwnedView) value).share();
+                }
+                return value;
+            }
+            Collection<Object> elements = collection instanceof Set ? new LinkedHashSet<>() : new ArrayList<>();
+            collection.forEach(element -> elements.add(copyValue(element)));
+            if (value instanceof ImmutableCollection) {
+                return elements instanceof Set ? ImmutableSet.copyOf(elements) : ImmutableList.copyOf(elements);
+            }
+            return readOnly ? unmodifiableElements(elements) : elements;
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            boolean readOnly = isReadOnly(map);
+            if (readOnly && map.values().stream().noneMatch(MapProxy::isMutableProxy)) {
+                return value;
+            }
+            Map<Object, Object> entries = new LinkedHashMap<>();
+            map.forEach((k, v) -> entries.put(k, copyValue(v)));
+            if (value instanceof ImmutableMap) {
+                return ImmutableMap.copyOf(entries);
+            }
+            return readOnly ? Collections.unmodifiableMap(entries) : entries;
+        }
+        return value;
+    }
+
+    private static final Set<Class<?>> READ_ONLY_COLLECTION_CLASSES = ImmutableSet.of(
+            Collections.unmodifiableList(new ArrayList<>()).getClass(),
+            Collections.unmodifiableList(new LinkedList<>()).getClass(),
+            Collections.unmodifiableSet(new HashSet<>()).getClass(),
+            Collections.unmodifiableCollection(new ArrayList<>()).getClass(),
+            Collections.emptyList().getClass(),
+            Collections.emptySet().getClass());
+
+    private static final Set<Class<?>> READ_ONLY_MAP_CLASSES = ImmutableSet.of(
+            Collections.unmodifiableMap(new HashMap<>()).getClass(),
+            Collections.emptyMap().getClass());
+
+    private static boolean isReadOnly(Map<?, ?> map) {
+        return map instanceof ImmutableMap || READ_ONLY_MAP_CLASSES.contains(map.getClass());
+    }
+
+    private static boolean isReadOnly(Collection<?> collection) {
+        return collection instanceof ImmutableCollection || collection instanceof OwnedView
+                || READ_ONLY_COLLECTION_CLASSES.contains(collection.getClass());
+    }
+
+    private static boolean isMutableProxy(Object value) {
+        MapProxy handler = getHandler(value);
+        return handler != null && !handler.params.isImmutable();
+    }
+
+    private Object toViewValue(String attrName, AttributeInfo attributeInfo, Object value) {
+        if (isAssignableValue(attributeInfo, value)) {
+            return value;
+        }
+        Map<String, Object[]> values = getViewValues();
+        Object[] converted = values.get(attributeInfo.getMapKey());
+        if (converted == null || converted[0] != value) {
+            Object convertedValue = convertViewValue(attrName, attributeInfo, value);
+            if (!params.isImmutable() && !isStorageShared()) {
+                // Modifications of the converted value have to be visible in the storage
+                if (internal instanceof ConcurrentStorageMap) {
+                    Object previous = ((ConcurrentStorageMap) internal).update(attributeInfo.getMapKey(), current -> current == value ? convertedValue : current);
+                    return previous == value ? convertedValue : toViewValue(attrName, attributeInfo, previous);
+                }
+                internal.put(attributeInfo.getMapKey(), convertedValue);
+                return convertedValue;
+            }
+            // The getters of proxies sharing the storage do not write it, the other proxies would convert the
+            // value back. The value converted first is kept when the getter is called concurrently.
+            converted = values.merge(attributeInfo.getMapKey(), new Object[] {value, convertedValue},
+                    (current, candidate) -> current[0] == value ? current : candidate);
+        }
+        return converted[1];
+    }
+
+    private Object convertViewValue(String attrName, AttributeInfo attributeInfo, Object value) {
+        Class propertyType = attributeInfo.getPropertyType();
+        ParameterizedType parameterType = attributeInfo.getParameterType();
+        if (Optional.class.isAssignableFrom(propertyType) && parameterType != null) {
+            propertyType = attributeInfo.getTypeArgument(0);
+        }
+        MapProxy handler = getHandler(value);
+        if (handler != null && propertyType.isInterface()) {
+            return handler.newView(propertyType);
+        } else if (value instanceof Collection && Collection.class.isAssignableFrom(propertyType) && parameterType != null) {
+            Class elementType = attributeInfo.getTypeArgument(0);
+            Collection elements = (Collection) ((Collection) value).stream()
+                    .map(e -> {
+                        MapProxy elementHandler = getHandler(e);
+                        return elementHandler != null && !elementType.isInstance(e) ? elementHandler.newView(elementType) : e;
+                    })
+                    .collect(toCollectorForType(propertyType));
+            if (elements.stream().allMatch(e -> isAssignableElement(elementType, e))) {
+                // The converted collection of a shared storage is not written back, so it can not be modified
+                return params.isImmutable() || isStorageShared() ? immutableCollection(propertyType, elements) : mutableCollection(propertyType, elements);
+            }
+        } else if (value instanceof Map && propertyType.isInterface() && !params.isImmutable() && !params.isConcurrent()
+                && isStorageShared() && !isReadOnly((Map<?, ?>) value)) {
+            // The nested proxy is written through to the map in the shared storage
+            MapProxy nested = new MapProxy(propertyType, params, (Map<String, Object>) value);
+            nested.lazyConversion = true;
+            nested.storageShared = true;
+            return newProxyInstance(propertyType, nested);
+        }
+        return toProxyValue(clazz, attrName, attributeInfo, toValue(clazz, value, params), params);
+    }
+
+    private static boolean isAssignableValue(AttributeInfo attributeInfo, Object value) {
+        if (value == null) {
+            return true;
+        }
+        Class propertyType = attributeInfo.getPropertyType();
+        ParameterizedType parameterType = attributeInfo.getParameterType();
+        if (Optional.class.isAssignableFrom(propertyType)) {
+            return value instanceof Optional || parameterType == null || isAssignableElement(attributeInfo.getTypeArgument(0), value);
+        } else if (Collection.class.isAssignableFrom(propertyType)) {
+            if (!(value instanceof Collection)) {
+                return false;
+            }
+            if (parameterType != null) {
+                Class elementType = attributeInfo.getTypeArgument(0);
+                for (Object element : (Collection) value) {
+                    if (!isAssignableElement(elementType, element)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } else if (Map.class.isAssignableFrom(propertyType)) {
+            if (!(value instanceof Map)) {
+                return false;
+            }
+            if (parameterType != null) {
+                Class keyType = attributeInfo.getTypeArgument(0);
+                Class valueType = attributeInfo.getTypeArgument(1);
+                for (Map.Entry entry : ((Map<?, ?>) value).entrySet()) {
+                    if (!isAssignableElement(keyType, entry.getKey())
+                            || !(entry.getValue() instanceof Optional || isAssignableElement(valueType, entry.getValue()))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return isAssignableElement(propertyType, value);
+    }
+
+    private static boolean isAssignableElement(Class type, Object value) {
+        return value == null || type.isInstance(value)
+                || type.isPrimitive() && PRIMITIVES_TO_WRAPPERS.get(type).isInstance(value);
     }
 
     private static Map<String, Object> toProxyMap(Class proxyClass, MapProxyParams params, Map<String, Object> map) {
@@ -301,68 +910,13 @@ public final class MapProxy implements InvocationHandler {
         typeInfo.forEach((attrName, attrInfo) -> {
             final String mapKey = attrInfo.mapKey;
             final Class proxyPropertyType = attrInfo.getPropertyType();
-            Object proxyValue = null;
             if (map.containsKey(mapKey)) {
-                Object value = map.get(mapKey);
-                if (value instanceof Optional) {
-                    value = ((Optional) value).orElse(null);
-                }
-                Optional<ParameterizedType> parametrizedType = Optional.ofNullable(attrInfo.getParameterType());
-                if (value == null) {
-                    proxyValue = null;
-                } else if (Collection.class.isAssignableFrom(proxyPropertyType)) {
-                    if (!(value instanceof Collection)) {
-                        throw new IllegalArgumentException(String.format("The attribute %s in %s must be collection.", attrName, proxyClass.getName()));
-                    }
-                    proxyValue = toProxyCollection(proxyClass, (Collection) value, proxyPropertyType, parametrizedType.orElse(null), params);
-                } else if (Optional.class.isAssignableFrom(proxyPropertyType) && parametrizedType.isPresent()) {
-                    Class optionalType = getRawType(parametrizedType.orElseThrow(() ->
-                            new IllegalStateException(String.format("Optional type attribute %s in %s class does not have generic type.", attrName, proxyClass.getName()))), 0);
-                    if (value instanceof Map) {
-                        if (optionalType.isInterface()) {
-                            proxyValue = MapProxy.builder(optionalType)
-                                    .withParams(params)
-                                    .withMap((Map) value)
-                                    .newInstance();
-                        } else {
-                            throw new IllegalArgumentException(String.format("The attribute %s in %s is Optional. The Optional's generic type have to be interface.", attrName, proxyClass.getName()));
-                        }
-                    } else if (optionalType.isAssignableFrom(value.getClass())) {
-                        proxyValue = value;
-                    } else if (optionalType.isEnum()) {
-                        proxyValue = toEnum(params, value, optionalType);
-                    }
-                } else if (value instanceof Map) {
-                    if (Map.class.isAssignableFrom(proxyPropertyType)) {
-                        proxyValue = toProxyMap(proxyClass, (Map) value, proxyPropertyType, parametrizedType.orElse(null), params);
-                    } else if (proxyPropertyType.isInterface()) {
-                        proxyValue = MapProxy.builder(proxyPropertyType)
-                                .withParams(params)
-                                .withMap((Map) value)
-                                .newInstance();
-                    }
-                } else if (proxyPropertyType.isEnum() && !proxyPropertyType.isAssignableFrom(value.getClass())) {
-                    proxyValue = toEnum(params, value, proxyPropertyType);
-                } else if (proxyPropertyType.isInterface() && !proxyPropertyType.isAssignableFrom(value.getClass())) {
-                    proxyValue = MapProxy.builder(proxyPropertyType)
-                            .withParams(params)
-                            .withMap(beanToProxyMap(proxyPropertyType, params, value))
-                            .newInstance();
-                } else if (proxyPropertyType.isAssignableFrom(value.getClass())) {
-                    proxyValue = value;
-                } else {
-                    proxyValue = getValueAs(value, proxyPropertyType, "Could not assign " + value.getClass()
-                            + " to " + proxyClass.getName() + "." + attrName + " as %s");
-                }
-                proxyMap.put(mapKey, proxyValue);
+                proxyMap.put(mapKey, toProxyValue(proxyClass, attrName, attrInfo, map.get(mapKey), params));
             } else if (attrInfo != null && attrInfo.composite) {
                 if (!proxyPropertyType.isInterface()) {
                     throw new IllegalArgumentException(String.format("The attribute %s in %s is not interface. The @Embedded attributes type have to be interface.", attrName, proxyClass.getName()));
                 }
-                proxyMap.putAll(((MapHolder) MapProxy.builder(proxyPropertyType)
-                        .withParams(params)
-                        .withMap(map)
-                        .newInstance()).toMap());
+                proxyMap.putAll(toProxyMap(proxyPropertyType, params, map));
 
             }
         });
@@ -370,47 +924,76 @@ public final class MapProxy implements InvocationHandler {
         return proxyMap;
     }
 
+    private static Object toProxyValue(Class proxyClass, String attrName, AttributeInfo attrInfo, Object value, MapProxyParams params) {
+        final Class proxyPropertyType = attrInfo.getPropertyType();
+        Object proxyValue = null;
+        if (value instanceof Optional) {
+            value = ((Optional) value).orElse(null);
+        }
+        Optional<ParameterizedType> parametrizedType = Optional.ofNullable(attrInfo.getParameterType());
+        if (value == null) {
+            proxyValue = null;
+        } else if (Collection.class.isAssignableFrom(proxyPropertyType)) {
+            if (!(value instanceof Collection)) {
+                throw new IllegalArgumentException(String.format("The attribute %s in %s must be collection.", attrName, proxyClass.getName()));
+            }
+            proxyValue = toProxyCollection(proxyClass, (Collection) value, proxyPropertyType, parametrizedType.orElse(null), params);
+        } else if (Optional.class.isAssignableFrom(proxyPropertyType) && parametrizedType.isPresent()) {
+            Class optionalType = getRawType(parametrizedType.orElseThrow(() ->
+                    new IllegalStateException(String.format("Optional type attribute %s in %s class does not have generic type.", attrName, proxyClass.getName()))), 0);
+            if (value instanceof Map) {
+                if (optionalType.isInterface()) {
+                    proxyValue = MapProxy.builder(optionalType)
+                            .withParams(params)
+                            .withMap((Map) value)
+                            .newInstance();
+                } else {
+                    throw new IllegalArgumentException(String.format("The attribute %s in %s is Optional. The Optional's generic type have to be interface.", attrName, proxyClass.getName()));
+                }
+            } else if (optionalType.isAssignableFrom(value.getClass())) {
+                proxyValue = value;
+            } else if (optionalType.isEnum()) {
+                proxyValue = toEnum(params, value, optionalType);
+            }
+        } else if (value instanceof Map) {
+            if (Map.class.isAssignableFrom(proxyPropertyType)) {
+                proxyValue = toProxyMap(proxyClass, (Map) value, proxyPropertyType, parametrizedType.orElse(null), params);
+            } else if (proxyPropertyType.isInterface()) {
+                proxyValue = MapProxy.builder(proxyPropertyType)
+                        .withParams(params)
+                        .withMap((Map) value)
+                        .newInstance();
+            }
+        } else if (proxyPropertyType.isEnum() && !proxyPropertyType.isAssignableFrom(value.getClass())) {
+            proxyValue = toEnum(params, value, proxyPropertyType);
+        } else if (proxyPropertyType.isInterface() && !proxyPropertyType.isAssignableFrom(value.getClass())) {
+            proxyValue = MapProxy.builder(proxyPropertyType)
+                    .withParams(params)
+                    .withBean(value)
+                    .newInstance();
+        } else if (proxyPropertyType.isAssignableFrom(value.getClass())) {
+            proxyValue = value;
+        } else {
+            proxyValue = getValueAs(value, proxyPropertyType, "Could not assign " + value.getClass()
+                    + " to " + proxyClass.getName() + "." + attrName + " as %s");
+        }
+        return proxyValue;
+    }
+
     private static Map beanToProxyMap(Class clazz, MapProxyParams params, Object bean) {
         if (bean == null) {
             return null;
         }
-        Map<String, AttributeInfo> targetInfos = null;
-        Map<String, AttributeInfo> beanInfos = null;
-
-        try {
-            targetInfos = typeInfoCache.get(clazz);
-            beanInfos = typeInfoCache.get(bean.getClass());
-        } catch (ExecutionException e) {
-            throw new RuntimeException(e);
-        }
-
-        Map<String, Object> map = new LinkedHashMap<>();
-        Map<String, AttributeInfo> finalBeanInfos = beanInfos;
-
-        targetInfos.forEach((attrName, attrInfo) -> {
-            if (!attrInfo.isComposite()) {
-                Object value = null;
-                try {
-                    value = finalBeanInfos.get(attrName).propertyDescriptor.getReadMethod().invoke(bean);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    throw new RuntimeException(e);
-                }
-                if (finalBeanInfos.containsKey(attrName)) {
-                    map.put(getKeyName(clazz, attrName), value);
-                }
-            }
-        });
-        toProxyMap(clazz, params, map);
-        return map;
+        return BeanReader.of(bean.getClass(), clazz).read(bean);
     }
 
-    private static <T> T toBeanFromObject(Object object, Class proxyClass, Class<T> targetClass, MapProxyParams params) {
+    static <T> T toBeanFromObject(Object object, Class proxyClass, Class<T> targetClass, MapProxyParams params) {
         if (object == null) {
             return null;
         } else if (Map.class.isAssignableFrom(targetClass) && targetClass.isAssignableFrom(object.getClass())) {
             return (T) object;
         } else if (object instanceof MapHolder) {
-            return toBeanFromMap(((MapHolder) object).toMap(), proxyClass, targetClass, params);
+            return BeanWriter.of(proxyClass, targetClass).write(((MapHolder) object).$internalMap(), params);
         } else if (object instanceof Map) {
             return toBeanFromMap((Map) object, proxyClass, targetClass, params);
         } else if (targetClass.isAssignableFrom(object.getClass())) {
@@ -436,74 +1019,13 @@ public final class MapProxy implements InvocationHandler {
         T bean = createNewInstance(target);
         targetInfos.forEach((attrName, attrInfo) -> {
             if (proxyMap.containsKey(attrInfo.mapKey) && finalBeanInfos.containsKey(attrName) && finalBeanInfos.get(attrName).propertyDescriptor.getWriteMethod() != null) {
-                Object value = proxyMap.get(attrInfo.mapKey);
-                Method m = finalBeanInfos.get(attrName).propertyDescriptor.getWriteMethod();
                 AttributeInfo beanInfo = finalBeanInfos.get(attrName);
-                final String mapKey = attrInfo.mapKey;
-                Object valueToSet = null;
-                Optional<ParameterizedType> proxyParametrizedType = Optional.ofNullable(attrInfo.getParameterType());
-                Class proxyPropertyType = attrInfo.getPropertyType();
-                if (Optional.class.isAssignableFrom(proxyPropertyType) && proxyParametrizedType.isPresent()) {
-                    getRawType(proxyParametrizedType.orElseThrow(() ->
-                            new IllegalStateException(String.format("Optional type attribute %s in %s class does not have generic type.", attrName, proxyClass.getName()))), 0);
-                }
-                Class beanPropertyType = beanInfo.getPropertyType();
-                Optional<ParameterizedType> beanParametrizedType = Optional.ofNullable(beanInfo.getParameterType());
-
-                if (value != null) {
-                    if (Collection.class.isAssignableFrom(beanInfo.getPropertyType())) {
-                        if (!Collection.class.isAssignableFrom(attrInfo.getPropertyType())) {
-                            throw new IllegalArgumentException(String.format("The attribute %s in %s is collection, but not in in proxy %s type.",
-                                    attrName, beanInfo.getPropertyType().getName(), attrInfo.getPropertyType().getName()));
-                        } else if (proxyParametrizedType.isPresent() && !beanParametrizedType.isPresent()) {
-                            throw new IllegalArgumentException(String.format("The attribute %s in %s is collection without generic type, but not in in proxy %s type the generic type is %s.",
-                                    attrName, beanInfo.getPropertyType().getName(), attrInfo.getPropertyType().getName(), proxyParametrizedType.get().getTypeName()));
-                        } else if (!proxyParametrizedType.isPresent() && beanParametrizedType.isPresent()) {
-                            throw new IllegalArgumentException(String.format("The attribute %s in %s is collection generic type is %s, but not in in proxy %s type is without generic type.",
-                                    attrName, beanInfo.getPropertyType().getName(), beanParametrizedType.get().getTypeName(), attrInfo.getPropertyType().getName()));
-                        } else if (proxyParametrizedType.isPresent() && beanParametrizedType.isPresent()) {
-                            valueToSet = toBeanCollection(proxyClass,
-                                    (Collection) value,
-                                    proxyPropertyType,
-                                    proxyParametrizedType.get(),
-                                    beanPropertyType,
-                                    beanParametrizedType.get(),
-                                    params);
-                        } else {
-                            valueToSet = value;
-                        }
-                    } else if (value instanceof MapHolder) {
-                        valueToSet = toBeanFromMap(((MapHolder) value).toMap(), proxyPropertyType, beanPropertyType, params);
-                    } else if (value instanceof Map) {
-                        if (!Map.class.isAssignableFrom(beanInfo.getPropertyType())) {
-                            valueToSet = toBeanFromObject(value, proxyPropertyType, beanPropertyType, params);
-                        } else {
-                            if (proxyParametrizedType.isPresent() && !beanParametrizedType.isPresent()) {
-                                throw new IllegalArgumentException(String.format("The attribute %s in %s is map without generic type, but not in in proxy %s type the generic type is %s.",
-                                        attrName, beanInfo.getPropertyType().getName(), attrInfo.getPropertyType().getName(), proxyParametrizedType.get().getTypeName()));
-                            } else if (!proxyParametrizedType.isPresent() && beanParametrizedType.isPresent()) {
-                                throw new IllegalArgumentException(String.format("The attribute %s in %s is map generic type is %s, but not in in proxy %s type is without generic type.",
-                                        attrName, beanInfo.getPropertyType().getName(), beanParametrizedType.get().getTypeName(), attrInfo.getPropertyType().getName()));
-                            } else if (proxyParametrizedType.isPresent() && beanParametrizedType.isPresent()) {
-                                valueToSet = toMapForBeanFromMapWithGenerics((Map) value, proxyParametrizedType.get(), beanParametrizedType.get(), params);
-                            } else if (Map.class.isAssignableFrom(beanPropertyType)) {
-                                valueToSet = (Map) value;
-                            } else {
-                                throw new IllegalArgumentException("sdsd");
-                            }
-                        }
-                    } else if (beanPropertyType.isEnum()) {
-                        valueToSet = toEnum(params, value, beanPropertyType);
-                    } else if (beanPropertyType.isAssignableFrom(value.getClass())) {
-                        valueToSet = value;
-                    }
-
-                    if (valueToSet != null) {
-                        try {
-                            beanInfo.propertyDescriptor.getWriteMethod().invoke(bean, valueToSet);
-                        } catch (IllegalAccessException | InvocationTargetException e) {
-                            throw new RuntimeException(e);
-                        }
+                Object valueToSet = toBeanValue(proxyClass, attrName, attrInfo, beanInfo, proxyMap.get(attrInfo.mapKey), params);
+                if (valueToSet != null) {
+                    try {
+                        beanInfo.propertyDescriptor.getWriteMethod().invoke(bean, valueToSet);
+                    } catch (IllegalAccessException | InvocationTargetException e) {
+                        throw new RuntimeException(e);
                     }
                 }
             }
@@ -511,6 +1033,72 @@ public final class MapProxy implements InvocationHandler {
         return bean;
     }
 
+    /**
+     * Converts a value of the proxy attribute, in the representation of {@link MapHolder#toMap()}, to the type of
+     * the bean property. Returns null when the value can not be assigned.
+     */
+    static Object toBeanValue(Class proxyClass, String attrName, AttributeInfo attrInfo, AttributeInfo beanInfo, Object value, MapProxyParams params) {
+        Object valueToSet = null;
+        Optional<ParameterizedType> proxyParametrizedType = Optional.ofNullable(attrInfo.getParameterType());
+        Class proxyPropertyType = attrInfo.getPropertyType();
+        if (Optional.class.isAssignableFrom(proxyPropertyType) && proxyParametrizedType.isPresent()) {
+            getRawType(proxyParametrizedType.orElseThrow(() ->
+                    new IllegalStateException(String.format("Optional type attribute %s in %s class does not have generic type.", attrName, proxyClass.getName()))), 0);
+        }
+        Class beanPropertyType = beanInfo.getPropertyType();
+        Optional<ParameterizedType> beanParametrizedType = Optional.ofNullable(beanInfo.getParameterType());
+
+        if (value != null) {
+            if (Collection.class.isAssignableFrom(beanInfo.getPropertyType())) {
+                if (!Collection.class.isAssignableFrom(attrInfo.getPropertyType())) {
+                    throw new IllegalArgumentException(String.format("The attribute %s in %s is collection, but not in in proxy %s type.",
+                            attrName, beanInfo.getPropertyType().getName(), attrInfo.getPropertyType().getName()));
+                } else if (proxyParametrizedType.isPresent() && !beanParametrizedType.isPresent()) {
+                    throw new IllegalArgumentException(String.format("The attribute %s in %s is collection without generic type, but not in in proxy %s type the generic type is %s.",
+                            attrName, beanInfo.getPropertyType().getName(), attrInfo.getPropertyType().getName(), proxyParametrizedType.get().getTypeName()));
+                } else if (!proxyParametrizedType.isPresent() && beanParametrizedType.isPresent()) {
+                    throw new IllegalArgumentException(String.format("The attribute %s in %s is collection generic type is %s, but not in in proxy %s type is without generic type.",
+                            attrName, beanInfo.getPropertyType().getName(), beanParametrizedType.get().getTypeName(), attrInfo.getPropertyType().getName()));
+                } else if (proxyParametrizedType.isPresent() && beanParametrizedType.isPresent()) {
+                    valueToSet = toBeanCollection(proxyClass,
+                            (Collection) value,
+                            proxyPropertyType,
+                            proxyParametrizedType.get(),
+                            beanPropertyType,
+                            beanParametrizedType.get(),
+                            params);
+                } else {
+                    valueToSet = value;
+                }
+            } else if (value instanceof MapHolder) {
+                valueToSet = toBeanFromMap(((MapHolder) value).toMap(), proxyPropertyType, beanPropertyType, params);
+            } else if (value instanceof Map) {
+                if (!Map.class.isAssignableFrom(beanInfo.getPropertyType())) {
+                    valueToSet = toBeanFromObject(value, proxyPropertyType, beanPropertyType, params);
+                } else {
+                    if (proxyParametrizedType.isPresent() && !beanParametrizedType.isPresent()) {
+                        throw new IllegalArgumentException(String.format("The attribute %s in %s is map without generic type, but not in in proxy %s type the generic type is %s.",
+                                attrName, beanInfo.getPropertyType().getName(), attrInfo.getPropertyType().getName(), proxyParametrizedType.get().getTypeName()));
+                    } else if (!proxyParametrizedType.isPresent() && beanParametrizedType.isPresent()) {
+                        throw new IllegalArgumentException(String.format("The attribute %s in %s is map generic type is %s, but not in in proxy %s type is without generic type.",
+                                attrName, beanInfo.getPropertyType().getName(), beanParametrizedType.get().getTypeName(), attrInfo.getPropertyType().getName()));
+                    } else if (proxyParametrizedType.isPresent() && beanParametrizedType.isPresent()) {
+                        valueToSet = toMapForBeanFromMapWithGenerics((Map) value, proxyParametrizedType.get(), beanParametrizedType.get(), params);
+                    } else if (Map.class.isAssignableFrom(beanPropertyType)) {
+                        valueToSet = (Map) value;
+                    } else {
+                        throw new IllegalArgumentException("sdsd");
+                    }
+                }
+            } else if (beanPropertyType.isEnum()) {
+                valueToSet = toEnum(params, value, beanPropertyType);
+            } else if (beanPropertyType.isAssignableFrom(value.getClass())) {
+                valueToSet = value;
+            }
+        }
+        return valueToSet;
+    }
+
     private static Optional<ParameterizedType> getGetterOrSetterParameterizedType(PropertyDescriptor propertyDescriptor) {
         Type genericType = null;
         if (propertyDescriptor.getReadMethod() != null) {
@@ -526,7 +1114,7 @@ public final class MapProxy implements InvocationHandler {
         }
     }
 
-    private static Object toEnum(MapProxyParams params, Object value, Class returnType) {
+    static Object toEnum(MapProxyParams params, Object value, Class returnType) {
         Enum enumValue = null;
         if (params.getEnumMappingMethod().equals("name")) {
             enumValue = Enum.valueOf(returnType, (String) value);
@@ -609,7 +1197,10 @@ public final class MapProxy implements InvocationHandler {
         Collection transformedValue = value;
         if (parameterizedType != null) {
             final Class collectionType = getRawType(parameterizedType, 0);
-            if (collectionType.isInterface()
+            if (value instanceof ProxyColumns && collectionType.equals(((ProxyColumns) value).getElementType())
+                    && propertyType.isAssignableFrom(ProxyColumns.class)) {
+                return params.isImmutable() ? ((ProxyColumns) value).toFrozen() : value;
+            } else if (collectionType.isInterface()
                     && !Map.class.isAssignableFrom(collectionType)) {
                 transformedValue =  (Collection) value.stream()
                         .map(toValueFunction(clazz, params))
@@ -646,7 +1237,7 @@ public final class MapProxy implements InvocationHandler {
          return transformedValue;
     }
 
-    private static Collection mutableCollection(Class returnType, Collection valueTransformed) {
+    static Collection mutableCollection(Class returnType, Collection valueTransformed) {
         Collection valueRet = null;
         if (valueTransformed == null) {
             return null;
@@ -671,7 +1262,7 @@ public final class MapProxy implements InvocationHandler {
         return valueRet;
     }
 
-    private static Collection immutableCollection(Class returnType, Collection valueTransformed) {
+    static Collection immutableCollection(Class returnType, Collection valueTransformed) {
         Collection valueRet = null;
         if (valueTransformed == null) {
             return null;
@@ -687,24 +1278,39 @@ public final class MapProxy implements InvocationHandler {
     }
 
     private int invokeHashCode(Object proxy) throws ExecutionException, InvocationTargetException, IllegalAccessException {
+        if (interner != null) {
+            int h = hash;
+            if (h == 0) {
+                h = computeHashCode(proxy);
+                hash = h;
+            }
+            return h;
+        }
+        return computeHashCode(proxy);
+    }
+
+    private int computeHashCode(Object proxy) throws ExecutionException, InvocationTargetException, IllegalAccessException {
         Optional<Method> hashCode = Optional.ofNullable(staticMethodCache.get(clazz).get(METHOD_HASH_CODE));
         if (hashCode.isPresent()) {
             return (int) hashCode.get().invoke(null, proxy);
         } else {
-            return invokeToString(proxy).hashCode();
+            return toFullString(proxy).hashCode();
         }
     }
 
     private boolean invokeEquals(Object proxy, Object[] args) throws InvocationTargetException, IllegalAccessException, ExecutionException {
         Object obj = args[0];
-        if (obj == null) {
+        if (obj == proxy) {
+            return true;
+        } else if (obj == null) {
             return false;
         } if (clazz.isAssignableFrom(obj.getClass())) {
             Optional<Method> equals = Optional.ofNullable(staticMethodCache.get(proxy.getClass()).get(METHOD_EQUALS));
             if (equals.isPresent()) {
                 return (Boolean) equals.get().invoke(null, proxy, obj);
             } else {
-                return proxy.toString().equals(obj.toString());
+                MapProxy other = getHandler(obj);
+                return toFullString(proxy).equals(other != null ? other.toFullString(obj) : obj.toString());
             }
         }
         return false;
@@ -734,56 +1340,417 @@ public final class MapProxy implements InvocationHandler {
         if (attributeInfo != null && Collection.class.isAssignableFrom(attributeInfo.getPropertyType())) {
             Object values = internal.get(getKeyName(clazz, attrName));
 
-            List<Object> valuesArray = (values instanceof Collection<?>)
-                    ? new ArrayList<>((Collection) values)
-                    : new ArrayList<>();
-            
-            if (add) {
-                valuesArray.add(args[0]);
-            } else {
-                valuesArray.remove(args[0]);
+            if (values instanceof ProxyColumns) {
+                addOrRemoveColumns((ProxyColumns) values, args, add);
+                markChanged(getKeyName(clazz, attrName));
+                return;
             }
 
+            List<Object> elements = new ArrayList<>();
+            elements.add(args[0]);
+
             if (args.length > 1) {
                 if (args[1] instanceof Object[]) {
                     Object[] valuesForAdd = (Object[]) args[1];
                     for (Object value : valuesForAdd) {
                         if (attributeInfo.isComposite() && value instanceof MapHolder) {
                             if (attributeInfo.getPropertyType().isInterface()) {
-                                MapHolder proxy = (MapHolder) MapProxy.builder(attributeInfo.getPropertyType())
-                                        .withParams(params)
-                                        .withMap(((MapHolder) value).toMap())
-                                        .newInstance();
-                                proxy.toMap().entrySet().forEach(e -> {
+                                toEmbeddedValues(attributeInfo.getPropertyType(), (MapHolder) value).forEach((k, v) -> {
                                     if (add) {
-                                        internal.put(e.getKey(), e.getValue());
-                                    } else {
-                                        internal.remove(e.getKey(), e.getValue());
+                                        putValue(k, v);
+                                    } else if (internal.remove(k, v)) {
+                                        markChanged(k);
                                     }
-
                                 });
                             } else {
                                 throw new IllegalArgumentException(String.format("The attribute %s in %s is not an interface. The @Embedded attributes type has to be interface.", attrName, clazz.getName()));
                             }
                         } else {
-                            if (add) {
-                                valuesArray.add(value);
-                            } else {
-                                valuesArray.remove(value);
-                            }
+                            elements.add(value);
                         }
                     }
                 } else {
+                    elements.add(args[1]);
+                }
+            }
+
+            if (internal instanceof ConcurrentStorageMap) {
+                updateConcurrentCollection(getKeyName(clazz, attrName), attributeInfo.getPropertyType(), target -> {
                     if (add) {
-                        valuesArray.add(args[1]);
+                        target.addAll(elements);
                     } else {
-                        valuesArray.remove(args[1]);
+                        removeFirstOccurrences(target, elements);
                     }
+                });
+                return;
+            }
+
+            Collection<Object> owned = getOwnedCollection(getKeyName(clazz, attrName), attributeInfo.getPropertyType());
+            if (add) {
+                owned.addAll(elements);
+            } else {
+                removeFirstOccurrences(owned, elements);
+            }
+            publishOwnedCollection(getKeyName(clazz, attrName));
+        }
+    }
+
+    private void invokeBulkAddOrRemove(Method m, Object[] args, String prefix) throws ExecutionException {
+        if (params.isImmutable()) {
+            throw new IllegalStateException("Could not call " + prefix + " on immutable object");
+        }
+        String attrName = Character.toLowerCase(m.getName().charAt(prefix.length())) + m.getName().substring(prefix.length() + 1);
+        AttributeInfo attributeInfo = typeInfoCache.get(clazz).get(attrName);
+        if (attributeInfo == null || !Collection.class.isAssignableFrom(attributeInfo.getPropertyType())) {
+            throw new IllegalArgumentException(String.format("The attribute %s in %s is not a collection.", attrName, clazz.getName()));
+        }
+        if (args[0] == null) {
+            return;
+        }
+
+        String mapKey = getKeyName(clazz, attrName);
+        if (internal instanceof ConcurrentStorageMap) {
+            updateConcurrentCollection(mapKey, attributeInfo.getPropertyType(), target -> bulkAddOrRemove(target, args[0], prefix));
+            return;
+        }
+
+        Object values = internal.get(mapKey);
+        Collection<Object> target = values instanceof ProxyColumns
+                ? (ProxyColumns) values
+                : getOwnedCollection(mapKey, attributeInfo.getPropertyType());
+
+        boolean changed = bulkAddOrRemove(target, args[0], prefix);
+
+        if (values instanceof ProxyColumns) {
+            if (changed) {
+                markChanged(mapKey);
+            }
+        } else {
+            publishOwnedCollection(mapKey);
+        }
+    }
+
+    private static boolean bulkAddOrRemove(Collection<Object> target, Object source, String prefix) {
+        if (METHOD_ADD_ALL.equals(prefix)) {
+            return addAll(target, source);
+        } else if (METHOD_REMOVE_ALL.equals(prefix)) {
+            Set<Object> toRemove = Collections.newSetFromMap(new IdentityHashMap<>());
+            addAll(toRemove, source);
+            Set<Object> hashed = new HashSet<>();
+            List<Object> unhashed = new ArrayList<>();
+            for (Object element : toRemove) {
+                (isHashable(element) ? hashed : unhashed).add(element);
+            }
+            return target.removeIf(e -> toRemove.contains(e) || hashed.contains(e)
+                    || unhashed.stream().anyMatch(element -> Objects.equals(e, element)));
+        }
+        return target.removeIf((Predicate<Object>) source);
+    }
+
+    /**
+     * Returns false for the proxies whose interface defines a static equals without hashCode, they can be
+     * matched by equals only, as removeFrom does.
+     */
+    private static boolean isHashable(Object element) {
+        MapProxy handler = getHandler(element);
+        if (handler == null) {
+            return true;
+        }
+        Map<String, Method> staticMethods = staticMethodCache.getUnchecked(handler.clazz);
+        return !staticMethods.containsKey(METHOD_EQUALS) || staticMethods.containsKey(METHOD_HASH_CODE);
+    }
+
+    private static boolean addAll(Collection<Object> target, Object source) {
+        if (source instanceof Collection) {
+            return target.addAll((Collection) source);
+        } else if (source instanceof Object[]) {
+            return target.addAll(Arrays.asList((Object[]) source));
+        }
+        boolean changed = false;
+        for (Object value : (Iterable) source) {
+            changed |= target.add(value);
+        }
+        return changed;
+    }
+
+    /**
+     * Removes the first occurrence of each element in one pass. The elements are matched by reference
+     * before falling back to equals.
+     */
+    private static void removeFirstOccurrences(Collection<Object> target, List<Object> elements) {
+        if (elements.size() == 1) {
+            Object element = elements.get(0);
+            Iterator<Object> iterator = target.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() == element) {
+                    iterator.remove();
+                    return;
+                }
+            }
+            target.remove(element);
+            return;
+        }
+        List<Object> pending = new ArrayList<>(elements);
+        target.removeIf(e -> {
+            if (pending.isEmpty()) {
+                return false;
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                if (pending.get(i) == e) {
+                    pending.remove(i);
+                    return true;
                 }
+            }
+            return pending.remove(e);
+        });
+    }
+
+    /**
+     * Returns the mutable collection owned by this proxy for the given key. It is created from the
+     * current value when the stored value is not the view of the owned collection.
+     */
+    private Collection<Object> getOwnedCollection(String mapKey, Class propertyType) {
+        if (ownedCollections == null) {
+            ownedCollections = new HashMap<>();
+        }
+        OwnedCollection owned = ownedCollections.get(mapKey);
+        Object current = internal.get(mapKey);
+        if (owned == null || owned.view != current) {
+            owned = new OwnedCollection(copyElements(propertyType, current));
+            ownedCollections.put(mapKey, owned);
+        } else if (owned.view.isShared()) {
+            owned.view.detach();
+        }
+        return owned.elements;
+    }
+
+    private static Collection<Object> copyElements(Class propertyType, Object current) {
+        Collection<Object> elements = Set.class.isAssignableFrom(propertyType) ? new LinkedHashSet<>() : new ArrayList<>();
+        if (current instanceof Collection) {
+            elements.addAll((Collection) current);
+        }
+        return elements;
+    }
+
+    private static Collection<Object> unmodifiableElements(Collection<Object> elements) {
+        return elements instanceof Set
+                ? Collections.unmodifiableSet((Set<Object>) elements)
+                : Collections.unmodifiableList((List<Object>) elements);
+    }
+
+    /**
+     * Updates a collection attribute of a concurrent proxy by compare and set. The update is applied on a copy
+     * of the current elements and the read-only view of the copy is stored.
+     */
+    private void updateConcurrentCollection(String mapKey, Class propertyType, Consumer<Collection<Object>> update) {
+        ((ConcurrentStorageMap) internal).update(mapKey, current -> {
+            Collection<Object> elements = copyElements(propertyType, current);
+            update.accept(elements);
+            return unmodifiableElements(elements);
+        });
+        markChanged(mapKey);
+    }
+
+    /**
+     * Stores a new read-only view of the owned collection. The view is a new instance after every
+     * modification, so the stored value's identity changes as the content does.
+     */
+    private void publishOwnedCollection(String mapKey) {
+        OwnedCollection owned = ownedCollections.get(mapKey);
+        owned.view = owned.elements instanceof Set
+                ? new OwnedSetView((Set<Object>) owned.elements)
+                : new OwnedListView((List<Object>) owned.elements);
+        putValue(mapKey, owned.view);
+    }
+
+    private static final class OwnedCollection {
+        private final Collection<Object> elements;
+        private OwnedView view;
+
+        private OwnedCollection(Collection<Object> elements) {
+            this.elements = elements;
+        }
+    }
+
+    /**
+     * Read-only view of an owned collection. The owner modifies the elements in place, so a view which has been
+     * returned by a getter or read is detached with a copy of the elements before they are modified, the
+     * collection seen by the caller does not change.
+     */
+    private interface OwnedView extends Collection<Object> {
+        void share();
 
+        boolean isShared();
+
+        void detach();
+    }
+
+    private static final class OwnedListView extends AbstractList<Object> implements OwnedView, RandomAccess {
+        private List<Object> elements;
+        private boolean shared;
+
+        private OwnedListView(List<Object> elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public Object get(int index) {
+            shared = true;
+            return elements.get(index);
+        }
+
+        @Override
+        public int size() {
+            shared = true;
+            return elements.size();
+        }
+
+        @Override
+        public void share() {
+            shared = true;
+        }
+
+        @Override
+        public boolean isShared() {
+            return shared;
+        }
+
+        @Override
+        public void detach() {
+            elements = new ArrayList<>(elements);
+        }
+    }
+
+    private static final class OwnedSetView extends AbstractSet<Object> implements OwnedView {
+        private Set<Object> elements;
+        private boolean shared;
+
+        private OwnedSetView(Set<Object> elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            shared = true;
+            return Iterators.unmodifiableIterator(elements.iterator());
+        }
+
+        @Override
+        public int size() {
+            shared = true;
+            return elements.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            shared = true;
+            return elements.contains(o);
+        }
+
+        @Override
+        public void share() {
+            shared = true;
+        }
+
+        @Override
+        public boolean isShared() {
+            return shared;
+        }
+
+        @Override
+        public void detach() {
+            elements = new LinkedHashSet<>(elements);
+        }
+    }
+
+    private static void addOrRemoveColumns(ProxyColumns columns, Object[] args, boolean add) {
+        List<Object> values = new ArrayList<>();
+        values.add(args[0]);
+        if (args.length > 1) {
+            if (args[1] instanceof Object[]) {
+                values.addAll(Arrays.asList((Object[]) args[1]));
+            } else {
+                values.add(args[1]);
+            }
+        }
+        for (Object value : values) {
+            if (add) {
+                columns.add(value);
+            } else {
+                columns.remove(value);
+            }
+        }
+    }
+
+    private Map<String, Object[]> getViewValues() {
+        Map<String, Object[]> values = viewValues;
+        if (values == null) {
+            synchronized (this) {
+                values = viewValues;
+                if (values == null) {
+                    values = isShareable() ? new ConcurrentHashMap<>() : new HashMap<>();
+                    viewValues = values;
+                }
             }
-            internal.put(getKeyName(clazz, attrName), Collections.unmodifiableList(valuesArray));
         }
+        return values;
+    }
+
+    private Map<String, Object> getEmbeddedViews() {
+        Map<String, Object> views = embeddedViews;
+        if (views == null) {
+            synchronized (this) {
+                views = embeddedViews;
+                if (views == null) {
+                    views = isShareable() ? new ConcurrentHashMap<>() : new HashMap<>();
+                    embeddedViews = views;
+                }
+            }
+        }
+        return views;
+    }
+
+    /**
+     * Immutable and concurrent proxies can be read by several threads at the same time.
+     */
+    private boolean isShareable() {
+        return params.isImmutable() || params.isConcurrent();
+    }
+
+    /**
+     * Returns the proxy of an @Embedded attribute. It is created once per proxy and reads and writes the
+     * storage of this proxy.
+     */
+    private Object getEmbeddedView(String attrName, AttributeInfo attributeInfo) {
+        Map<String, Object> views = getEmbeddedViews();
+        Object view = views.get(attrName);
+        if (view != null) {
+            return view;
+        }
+        return views.computeIfAbsent(attrName, name -> {
+            MapProxy handler = new MapProxy(attributeInfo.getPropertyType(), params, internal);
+            handler.lazyConversion = true;
+            handler.storageOwner = this;
+            return newProxyInstance(attributeInfo.getPropertyType(), handler);
+        });
+    }
+
+    /**
+     * Returns the storage values of the given value for the key set of an @Embedded interface.
+     */
+    private Map<String, Object> toEmbeddedValues(Class embeddedClass, MapHolder value) {
+        MapProxy handler = getHandler(value);
+        if (handler == null) {
+            return toProxyMap(embeddedClass, params, value.toMap());
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        storageInfoCache.getUnchecked(embeddedClass).forEach((mapKey, attrInfo) -> {
+            if (handler.internal.containsKey(mapKey)) {
+                Object v = toValue(handler.clazz, handler.internal.get(mapKey), params);
+                values.put(mapKey, toProxyValue(embeddedClass, mapKey, attrInfo, v, params));
+            }
+        });
+        return values;
     }
 
     private void invokeSet(Method m, Object[] args) throws ExecutionException {
@@ -802,22 +1769,49 @@ public final class MapProxy implements InvocationHandler {
 
         AttributeInfo attributeInfo = typeInfoCache.get(clazz).get(attrName);
         if (attributeInfo == null || !attributeInfo.isComposite()) {
-            internal.put(getKeyName(clazz, attrName), value);
+            putValue(getKeyName(clazz, attrName), value);
         } else if (attributeInfo != null && attributeInfo.isComposite() && value instanceof MapHolder) {
             if (attributeInfo.getPropertyType().isInterface()) {
-                MapHolder proxy = (MapHolder) MapProxy.builder(attributeInfo.getPropertyType())
-                        .withParams(params)
-                        .withMap(((MapHolder) value).toMap())
-                        .newInstance();
-                proxy.toMap().entrySet().forEach(e -> {
-                    internal.put(e.getKey(), e.getValue());
-                });
+                toEmbeddedValues(attributeInfo.getPropertyType(), (MapHolder) value).forEach(this::putValue);
             } else {
                 throw new IllegalArgumentException(String.format("The attribute %s in %s is not an interface. The @Embedded attributes type has to be interface.", attrName, clazz.getName()));
             }
         } else {
-            internal.put(getKeyName(clazz, attrName), value);
+            putValue(getKeyName(clazz, attrName), value);
+        }
+    }
+
+    private Object invokeCompute(Object[] args) {
+        if (params.isImmutable()) {
+            throw new IllegalStateException("Could not call compute on immutable object");
+        }
+        String attrName = (String) args[0];
+        UnaryOperator<Object> function = (UnaryOperator<Object>) args[1];
+        AttributeInfo attributeInfo = getTypeInfo(clazz).get(attrName);
+        if (attributeInfo == null || attributeInfo.isComposite()) {
+            throw new IllegalArgumentException(String.format("The attribute %s in %s could not be computed.", attrName, clazz.getName()));
+        }
+
+        Object[] computed = new Object[1];
+        UnaryOperator<Object> update = current -> {
+            Object value = lazyConversion && !isAssignableValue(attributeInfo, current)
+                    ? convertViewValue(attrName, attributeInfo, current)
+                    : current;
+            computed[0] = function.apply(value instanceof Optional ? ((Optional) value).orElse(null) : value);
+            return computed[0];
+        };
+
+        String mapKey = attributeInfo.getMapKey();
+        Object previous;
+        if (internal instanceof ConcurrentStorageMap) {
+            previous = ((ConcurrentStorageMap) internal).update(mapKey, update);
+        } else {
+            previous = internal.put(mapKey, update.apply(internal.get(mapKey)));
+        }
+        if (previous != computed[0]) {
+            markChanged(mapKey);
         }
+        return computed[0];
     }
 
     private static String getKeyName(Class clazz, String attrName) {
@@ -833,69 +1827,492 @@ public final class MapProxy implements InvocationHandler {
         }
         return mapKey;
     }
-    private Object invokeGet(Method m) {
-        String attrName = null;
-        if (m.getName().startsWith(METHOD_GET)) {
-            attrName = Character.toLowerCase(m.getName().charAt(3)) + m.getName().substring(4);
+    Object getStoredValue(String mapKey) {
+        return internal.get(mapKey);
+    }
+
+    /**
+     * Returns the stored value of the given key as the getter reads it, the value is converted to the attribute
+     * type if the storage is converted lazily.
+     */
+    Object getConvertedValue(String mapKey) {
+        Object value = internal.get(mapKey);
+        AttributeInfo attributeInfo = lazyConversion ? getStorageInfo(clazz).get(mapKey) : null;
+        return attributeInfo != null ? toViewValue(mapKey, attributeInfo, value) : value;
+    }
+
+    Map<String, Object> getStoredValues() {
+        return internal;
+    }
+
+    boolean hasStoredValue(String mapKey) {
+        return internal.containsKey(mapKey);
+    }
+
+    Collection<String> getStoredKeys() {
+        return internal.keySet();
+    }
+
+    void applyValue(String mapKey, Object value) {
+        checkPatchable();
+        putValue(mapKey, value);
+    }
+
+    void applyRemove(String mapKey) {
+        checkPatchable();
+        if (internal.containsKey(mapKey)) {
+            internal.remove(mapKey);
+            markChanged(mapKey);
+        }
+    }
+
+    void applyToCollection(String mapKey, Consumer<Collection<Object>> update) {
+        checkPatchable();
+        Object values = internal.get(mapKey);
+        AttributeInfo attributeInfo = getStorageInfo(clazz).get(mapKey);
+        Class propertyType = attributeInfo != null ? attributeInfo.getPropertyType() : values instanceof Set ? Set.class : List.class;
+        if (internal instanceof ConcurrentStorageMap) {
+            updateConcurrentCollection(mapKey, propertyType, update);
+        } else if (values instanceof ProxyColumns) {
+            update.accept((ProxyColumns) values);
+            markChanged(mapKey);
         } else {
-            attrName = m.getName();
+            update.accept(getOwnedCollection(mapKey, propertyType));
+            publishOwnedCollection(mapKey);
         }
+    }
 
-        AttributeInfo attributeInfo = null;
-        try {
-            attributeInfo = typeInfoCache.get(clazz).get(attrName);
-        } catch (ExecutionException e) {
-            throw new RuntimeException(e);
+    private void checkPatchable() {
+        if (params.isImmutable()) {
+            throw new IllegalStateException("Could not apply patch on immutable object");
         }
-        if (attributeInfo == null || !attributeInfo.isComposite()) {
-            Object value = internal.get(getKeyName(clazz, attrName));
+    }
 
-            if (params.isNullSafeCollection() && value == null && Collection.class.isAssignableFrom(m.getReturnType())) {
-                if (params.isImmutable()) {
-                    value = Collections.EMPTY_LIST;
-                } else {
-                    value = new ArrayList<>();
+    private void putValue(String mapKey, Object value) {
+        Object previous = internal.put(mapKey, value);
+        if (previous != value) {
+            markChanged(mapKey);
+        }
+    }
+
+    private void markChanged(String mapKey) {
+        storageWritten();
+        if (storageOwner != null) {
+            storageOwner.markChanged(mapKey);
+        }
+        Integer index = storageIndexCache.getUnchecked(clazz).get(mapKey);
+        synchronized (this) {
+            if (index != null) {
+                if (changed == null) {
+                    changed = new BitSet();
+                }
+                changed.set(index);
+            } else {
+                if (changedUnknownKeys == null) {
+                    changedUnknownKeys = new LinkedHashSet<>();
                 }
+                changedUnknownKeys.add(mapKey);
             }
+        }
+    }
 
-            if (attributeInfo != null) {
-                if (Optional.class.isAssignableFrom(attributeInfo.getPropertyType())) {
-                    if (value instanceof Optional) {
-                        return value;
-                    } else {
-                        if (internal.containsKey(getKeyName(clazz, attrName)) || params.isMapNullToOptionalAbsent()) {
-                            return Optional.ofNullable(getValueAs(value, getRawType(attributeInfo.getParameterType(), 0), "Unable to get " + attrName + " attribute as %s"));
-                        } else {
-                            return null;
-                        }
+    private synchronized boolean isChanged(String mapKey) {
+        Integer index = storageIndexCache.getUnchecked(clazz).get(mapKey);
+        if (index != null) {
+            return changed != null && changed.get(index);
+        }
+        return changedUnknownKeys != null && changedUnknownKeys.contains(mapKey);
+    }
+
+    private boolean hasChanges() {
+        return !invokeChangedKeys().isEmpty();
+    }
+
+    private Set<String> invokeChangedKeys() {
+        Set<String> changedKeys = new LinkedHashSet<>();
+        internal.forEach((mapKey, value) -> {
+            if (isChanged(mapKey) || containsChanges(value)) {
+                changedKeys.add(mapKey);
+            }
+        });
+        synchronized (this) {
+            if (changed != null) {
+                storageIndexCache.getUnchecked(clazz).forEach((mapKey, index) -> {
+                    if (changed.get(index)) {
+                        changedKeys.add(mapKey);
                     }
+                });
+            }
+            if (changedUnknownKeys != null) {
+                changedKeys.addAll(changedUnknownKeys);
+            }
+        }
+        return changedKeys;
+    }
+
+    private Map<String, Object> invokeToDeltaMap() {
+        Map<String, Object> delta = new LinkedHashMap<>();
+        for (String mapKey : invokeChangedKeys()) {
+            Object value = internal.get(mapKey);
+            if (!isChanged(mapKey) && value instanceof MapHolder) {
+                delta.put(mapKey, ((MapHolder) value).toDeltaMap());
+            } else {
+                delta.put(mapKey, toValue(clazz, value, params));
+            }
+        }
+        return delta;
+    }
+
+    private void invokeMarkClean() {
+        clearChanges();
+        if (embeddedViews != null) {
+            embeddedViews.values().forEach(view -> getHandler(view).clearChanges());
+        }
+        internal.values().forEach(MapProxy::markClean);
+    }
+
+    /**
+     * Turns this proxy and the proxies reachable through its values immutable. The storage map is replaced by a
+     * read-only copy of the same values, the collections and maps are copied read-only, the nested proxies are
+     * frozen in place.
+     */
+    private Object invokeFreeze(Object proxy) {
+        if (params.isImmutable()) {
+            return proxy;
+        }
+        params = toReadOnlyParams(params);
+        MapProxyInterner interner = params.getInterner();
+
+        Map<String, Object> frozen = new LinkedHashMap<>(internal.size() * 4 / 3 + 1);
+        internal.forEach((mapKey, value) -> frozen.put(mapKey, freezeValue(value, interner)));
+        internal = Collections.unmodifiableMap(frozen);
+        ownedCollections = null;
+        viewValues = null;
+        optionalValues = null;
+
+        Object canonical = proxy;
+        if (interner != null) {
+            canonical = interner.intern(proxy);
+            if (canonical != proxy) {
+                // This instance can not be replaced, but the storage of the canonical one is shared
+                internal = getHandler(canonical).internal;
+            }
+        }
+
+        if (embeddedViews != null) {
+            embeddedViews = new ConcurrentHashMap<>(embeddedViews);
+            for (Object view : embeddedViews.values()) {
+                MapProxy handler = getHandler(view);
+                handler.params = params;
+                handler.internal = internal;
+                handler.viewValues = null;
+                handler.optionalValues = null;
+            }
+        }
+        return canonical;
+    }
+
+    /**
+     * Freezes the given value. The collections and maps are copied, so the values which were shared with other
+     * holders can not change the frozen graph. With an interner the nested proxies are replaced by their
+     * canonical instances.
+     */
+    static Object freezeValue(Object value, MapProxyInterner interner) {
+        MapProxy handler = getHandler(value);
+        if (handler != null) {
+            Object frozen = handler.invokeFreeze(value);
+            return interner != null ? interner.intern(frozen) : frozen;
+        } else if (value instanceof ProxyColumns) {
+            // The columns are frozen in place, their elements are flyweights which are not frozen one by one
+            ((ProxyColumns<?>) value).freeze(interner);
+            return value;
+        } else if (value instanceof Collection) {
+            boolean unchanged = value instanceof ImmutableCollection;
+            Collection<Object> elements = value instanceof Set ? new LinkedHashSet<>() : new ArrayList<>();
+            for (Object element : (Collection<?>) value) {
+                Object frozen = freezeValue(element, interner);
+                unchanged &= frozen == element;
+                elements.add(frozen);
+            }
+            if (unchanged) {
+                return value;
+            } else if (elements.contains(null)) {
+                return unmodifiableElements(elements);
+            }
+            return elements instanceof Set ? ImmutableSet.copyOf(elements) : ImmutableList.copyOf(elements);
+        } else if (value instanceof Map) {
+            boolean unchanged = value instanceof ImmutableMap;
+            Map<Object, Object> entries = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Object key = freezeValue(entry.getKey(), null);
+                Object frozen = freezeValue(entry.getValue(), interner);
+                unchanged &= key == entry.getKey() && frozen == entry.getValue();
+                entries.put(key, frozen);
+            }
+            if (unchanged) {
+                return value;
+            } else if (entries.containsKey(null) || entries.containsValue(null)) {
+                return Collections.unmodifiableMap(entries);
+            }
+            return ImmutableMap.copyOf(entries);
+        }
+        return value;
+    }
+
+    /**
+     * Returns whether this proxy is immutable and the values reachable from it can not be changed by any holder.
+     * The cached strings and the interned instances depend on it, a proxy holding a mutable map or collection is
+     * rendered and hashed on each call instead.
+     */
+    boolean isGraphImmutable() {
+        if (!graphImmutable && params.isImmutable()
+                && isGraphImmutable(Collections.newSetFromMap(new IdentityHashMap<>()))) {
+            graphImmutable = true;
+        }
+        return graphImmutable;
+    }
+
+    private boolean isGraphImmutable(Set<MapProxy> visited) {
+        if (graphImmutable || !visited.add(this)) {
+            return true;
+        } else if (!params.isImmutable()) {
+            return false;
+        }
+        for (Object value : internal.values()) {
+            if (!isImmutableValue(value, visited)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isImmutableValue(Object value, Set<MapProxy> visited) {
+        MapProxy handler = getHandler(value);
+        if (handler != null) {
+            return handler.isGraphImmutable(visited);
+        } else if (value instanceof ProxyColumns) {
+            return ((ProxyColumns<?>) value).isFrozen();
+        } else if (value instanceof Optional) {
+            return isImmutableValue(((Optional<?>) value).orElse(null), visited);
+        } else if (value instanceof ImmutableCollection) {
+            return ((Collection<?>) value).stream().allMatch(element -> isImmutableValue(element, visited));
+        } else if (value instanceof ImmutableMap) {
+            return ((Map<?, ?>) value).entrySet().stream()
+                    .allMatch(entry -> isImmutableValue(entry.getKey(), visited) && isImmutableValue(entry.getValue(), visited));
+        }
+        return !(value instanceof Collection) && !(value instanceof Map);
+    }
+
+    private synchronized void clearChanges() {
+        changed = null;
+        changedUnknownKeys = null;
+    }
+
+    private static boolean containsProxies(Object value) {
+        if (value instanceof MapHolder) {
+            return true;
+        } else if (value instanceof Collection && !(value instanceof ProxyColumns)) {
+            for (Object element : (Collection) value) {
+                if (element instanceof MapHolder) {
+                    return true;
                 }
             }
-            return getValueAs(value, m.getReturnType(), "Unable to get " + attrName + " attribute as %s");
-        } else if (attributeInfo != null && attributeInfo.isComposite()) {
-            if (attributeInfo.getPropertyType().isInterface()) {
-                Object proxy = MapProxy.builder(attributeInfo.getPropertyType())
-                        .withParams(params)
-                        .withMap((Map) internal)
-                        .newInstance();
-                return proxy;
+        } else if (value instanceof Map) {
+            for (Object element : ((Map) value).values()) {
+                if (element instanceof MapHolder) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsChanges(Object value) {
+        MapProxy handler = getHandler(value);
+        if (handler != null) {
+            return handler.hasChanges();
+        } else if (value instanceof Collection && !(value instanceof ProxyColumns)) {
+            for (Object element : (Collection) value) {
+                if (containsChanges(element)) {
+                    return true;
+                }
+            }
+        } else if (value instanceof Map) {
+            for (Object element : ((Map) value).values()) {
+                if (containsChanges(element)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void markClean(Object value) {
+        MapProxy handler = getHandler(value);
+        if (handler != null) {
+            handler.invokeMarkClean();
+        } else if (value instanceof Collection && !(value instanceof ProxyColumns)) {
+            ((Collection) value).forEach(MapProxy::markClean);
+        } else if (value instanceof Map) {
+            ((Map) value).values().forEach(MapProxy::markClean);
+        }
+    }
+
+    static MapProxy getHandler(Object value) {
+        if (value instanceof MapHolder && java.lang.reflect.Proxy.isProxyClass(value.getClass())) {
+            InvocationHandler handler = java.lang.reflect.Proxy.getInvocationHandler(value);
+            if (handler instanceof MapProxy) {
+                return (MapProxy) handler;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The resolved attribute of a getter method, so reading an attribute does not parse the method name or look
+     * up the type info again.
+     */
+    private static final class GetterInfo {
+        private final String attrName;
+        private final String mapKey;
+        private final AttributeInfo attributeInfo;
+        private final Class returnType;
+        private final Class optionalType;
+        private final Collection<?> emptyCollection;
+        private final String errorPattern;
+        private final boolean is;
+
+        private GetterInfo(Class clazz, Method m, String attrName, boolean is) {
+            this.attrName = attrName;
+            this.is = is;
+            this.mapKey = getKeyName(clazz, attrName);
+            this.attributeInfo = getTypeInfo(clazz).get(attrName);
+            this.returnType = m.getReturnType();
+            this.optionalType = attributeInfo != null && Optional.class.isAssignableFrom(attributeInfo.getPropertyType())
+                    ? getRawType(attributeInfo.getParameterType(), 0)
+                    : null;
+            if (Set.class.isAssignableFrom(returnType)) {
+                this.emptyCollection = Collections.emptySet();
+            } else if (Collection.class.isAssignableFrom(returnType)) {
+                this.emptyCollection = Collections.emptyList();
             } else {
-                throw new IllegalArgumentException(String.format("The attribute %s in %s is not an interface. The @Embedded attributes type has to be interface.", attrName, clazz.getName()));
+                this.emptyCollection = null;
             }
+            this.errorPattern = "Unable to get " + attrName + " attribute as %s";
+        }
+    }
+
+    private static LoadingCache<Class, Map<Method, GetterInfo>> getterInfoCache = CacheBuilder
+            .newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Class, Map<Method, GetterInfo>>() {
+                @Override
+                public Map<Method, GetterInfo> load(Class clazz) {
+                    return new ConcurrentHashMap<>();
+                }
+            });
+
+    /**
+     * Returns the getters of this proxy type resolved so far. The map is kept by the handler, the getter calls
+     * do not touch the caches with access order bookkeeping.
+     */
+    private Map<Method, GetterInfo> getGetterInfos() {
+        Map<Method, GetterInfo> getters = getterInfos;
+        if (getters == null) {
+            getters = getterInfoCache.getUnchecked(clazz);
+            getterInfos = getters;
+        }
+        return getters;
+    }
+
+    private GetterInfo getGetterInfo(Method m, String prefix) {
+        return getGetterInfos().computeIfAbsent(m, method -> {
+            String attrName = prefix != null
+                    ? Character.toLowerCase(method.getName().charAt(prefix.length())) + method.getName().substring(prefix.length() + 1)
+                    : method.getName();
+            return new GetterInfo(clazz, method, attrName, METHOD_IS.equals(prefix));
+        });
+    }
+
+    private Object invokeGet(GetterInfo getter) {
+        AttributeInfo attributeInfo = getter.attributeInfo;
+        if (attributeInfo == null || !attributeInfo.isComposite()) {
+            Object value = internal.get(getter.mapKey);
+            if (lazyConversion && attributeInfo != null) {
+                value = toViewValue(getter.attrName, attributeInfo, value);
+            }
+
+            if (value instanceof OwnedView) {
+                ((OwnedView) value).share();
+            }
+
+            if (params.isNullSafeCollection() && value == null && getter.emptyCollection != null) {
+                value = getter.emptyCollection;
+            }
+
+            if (getter.optionalType != null) {
+                if (value instanceof Optional) {
+                    return value;
+                } else if (internal.containsKey(getter.mapKey) || params.isMapNullToOptionalAbsent()) {
+                    return toOptional(getter.mapKey, getValueAs(value, getter.optionalType, getter.errorPattern));
+                } else {
+                    return null;
+                }
+            }
+            return getValueAs(value, getter.returnType, getter.errorPattern);
+        } else if (attributeInfo.getPropertyType().isInterface()) {
+            return getEmbeddedView(getter.attrName, attributeInfo);
         } else {
-            Object value = internal.get(getKeyName(clazz, attrName));
-            return getValueAs(value, m.getReturnType(), "Unable to get " + attrName + " attribute as %s");
+            throw new IllegalArgumentException(String.format("The attribute %s in %s is not an interface. The @Embedded attributes type has to be interface.", getter.attrName, clazz.getName()));
+        }
+    }
+
+    /**
+     * Returns the optional of the value, the same instance as long as the value is not replaced.
+     */
+    private Optional<?> toOptional(String mapKey, Object value) {
+        if (value == null) {
+            return Optional.empty();
         }
+        Map<String, Object[]> values = optionalValues;
+        if (values == null) {
+            synchronized (this) {
+                values = optionalValues;
+                if (values == null) {
+                    values = isShareable() ? new ConcurrentHashMap<>() : new HashMap<>();
+                    optionalValues = values;
+                }
+            }
+        }
+        Object[] cached = values.get(mapKey);
+        if (cached == null || cached[0] != value) {
+            cached = new Object[] {value, Optional.of(value)};
+            values.put(mapKey, cached);
+        }
+        return (Optional<?>) cached[1];
     }
 
-    private boolean invokeIs(Method m) throws ExecutionException {
-        String attrName = Character.toLowerCase(m.getName().charAt(2)) + m.getName().substring(3);
-        final Object value = internal.get(getKeyName(clazz, attrName));
-        return (Boolean) getValueAs(value, boolean.class, "Unable to get " + attrName + " attribute as %s");
+    private boolean invokeIs(GetterInfo getter) {
+        final Object value = internal.get(getter.mapKey);
+        return (Boolean) getValueAs(value, boolean.class, getter.errorPattern);
     }
 
     private Object invokeToMap() {
+        return invokeToMap(null);
+    }
+
+    /**
+     * Converts the attributes selected by the mask, all of them if the mask is null.
+     */
+    private Object invokeToMap(FieldMask mask) {
+        return ConversionContext.convert(this, mask == null ? Map.class : mask, () -> convertToMap(mask));
+    }
+
+    private Object convertToMap(FieldMask mask) {
         final Map<Object, Object> map = new LinkedHashMap<>();
+        if (!params.isImmutable()) {
+            ConversionContext.register(this, mask == null ? Map.class : mask, map);
+        }
 
         Map<String, AttributeInfo> typeInfo = null;
         try {
@@ -905,24 +2322,23 @@ public final class MapProxy implements InvocationHandler {
         }
 
         typeInfo.forEach((attrName, attrInfo) -> {
+            if (mask != null && !mask.includes(attrName)) {
+                return;
+            }
             final String mapKey = attrInfo.getMapKey();
             if (attrInfo.isComposite() && attrInfo.propertyType.isInterface()) {
-                Map<String, Object> embeddedMap = ((MapHolder) MapProxy.builder(attrInfo.propertyType).withMap(internal).withParams(params).newInstance()).toMap();
-                map.putAll(embeddedMap);
+                map.putAll((Map<?, ?>) getHandler(getEmbeddedView(attrName, attrInfo)).invokeToMap(mask == null ? null : mask.embedded(attrName)));
             }
             if (internal.containsKey(mapKey)) {
                 Object value = internal.get(mapKey);
-                map.put(
-                        mapKey,
-                        toValueFunction(clazz, params).andThen(v1 -> (v1 == null && params.isImmutable()) ? Optional.empty() : v1).apply(value)
-                );
+                if (mask != null && mask.isLastLevel() && containsProxies(value)) {
+                    return;
+                }
+                Object converted = toValue(clazz, value, params, mask == null ? null : mask.child(attrName));
+                map.put(mapKey, converted == null && params.isImmutable() ? Optional.empty() : converted);
             }
         });
-        if (params.isImmutable()) {
-            return ImmutableMap.copyOf(map);
-        } else {
-            return new LinkedHashMap<>(map);
-        }
+        return params.isImmutable() ? ImmutableMap.copyOf(map) : map;
     }
 
     private <T> T invokeAdaptTo(Object proxy, Object args[]) {
@@ -931,32 +2347,113 @@ public final class MapProxy implements InvocationHandler {
         }
 
         Class<T> targetClazz = (Class<T>) args[0];
+        if (args.length > 1 && args[1] != null) {
+            FieldMask mask = (FieldMask) args[1];
+            if (targetClazz.equals(Map.class)) {
+                return (T) invokeToMap(mask);
+            }
+            Object projection = MapProxy.builder(clazz).withParams(params).withMap((Map<String, ?>) invokeToMap(mask)).newInstance();
+            return getHandler(projection).invokeAdaptTo(projection, new Object[] {targetClazz});
+        }
         if (targetClazz.equals(Map.class)) {
             return (T) invokeToMap();
         } else if (targetClazz.isInterface()) {
-            return MapProxy.builder(targetClazz)
-                    .withMap((Map<String, ?>) invokeToMap())
-                    .withParams(params)
-                    .newInstance();
+            return newView(targetClazz);
         } else {
             return toBeanFromObject(proxy, clazz, targetClazz, params);
         }
     }
 
-    private String invokeToString(Object proxy) throws ExecutionException, InvocationTargetException, IllegalAccessException {
-        Optional<Method> toString = Optional.ofNullable(staticMethodCache.get(clazz).get(METHOD_TO_STRING));
-        if (toString.isPresent()) {
-            return (String) toString.get().invoke(null, proxy);
-        } else {
-            Map<Object, Object> map = new LinkedHashMap<>();
-            for (Map.Entry entry : internal.entrySet().stream().sorted(Map.Entry.comparingByKey()).collect(Collectors.toList())) {
-                map.put(entry.getKey(), entry.getValue());
+    private String invokeToString(Object proxy) {
+        String string = cachedString;
+        if (string == null) {
+            MapProxyStringFormat format = MapProxyStringFormat.getDefault();
+            string = format.isUnlimited() ? toFullString(proxy) : format.format(proxy);
+            if (isGraphImmutable()) {
+                cachedString = string;
             }
-            return "PROXY" + map;
         }
+        return string;
+    }
+
+    /**
+     * Returns the string rendered without limits, which is used by the fallback equals and hashCode.
+     */
+    String toFullString(Object proxy) {
+        String string = cachedFullString;
+        if (string == null) {
+            string = MapProxyStringFormat.UNLIMITED_FORMAT.format(proxy);
+            if (isGraphImmutable()) {
+                cachedFullString = string;
+            }
+        }
+        return string;
+    }
+
+    String getCachedFullString() {
+        return cachedFullString;
+    }
+
+    /**
+     * Returns the result of the static toString method of the interface, null if there is none.
+     */
+    String invokeCustomToString(Object proxy) {
+        Method toString = staticMethodCache.getUnchecked(clazz).get(METHOD_TO_STRING);
+        if (toString == null) {
+            return null;
+        }
+        try {
+            return (String) toString.invoke(null, proxy);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static LoadingCache<Class, String[]> sortedStorageKeysCache = CacheBuilder
+            .newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Class, String[]>() {
+                @Override
+                public String[] load(Class clazz) {
+                    return getStorageInfo(clazz).keySet().stream().sorted().toArray(String[]::new);
+                }
+            });
+
+    /**
+     * Returns the keys printed by toString in sorted order, the keys of the type info if the storage has no
+     * other keys. Only the keys of the type info are printed with lazy conversion. The keys may be missing
+     * from the storage.
+     */
+    String[] getToStringKeys() {
+        String[] sortedKeys = sortedStorageKeysCache.getUnchecked(clazz);
+        if (lazyConversion) {
+            return sortedKeys;
+        }
+        int present = 0;
+        for (String key : sortedKeys) {
+            if (internal.containsKey(key)) {
+                present++;
+            }
+        }
+        if (present == internal.size()) {
+            return sortedKeys;
+        }
+        return getStoredKeys().stream().sorted().toArray(String[]::new);
+    }
+
+    Object getToStringValue(String mapKey) {
+        Object value = getStoredValue(mapKey);
+        return lazyConversion ? toViewValue(mapKey, getStorageInfo(clazz).get(mapKey), value) : value;
     }
 
     public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+        GetterInfo getter = getGetterInfos().get(m);
+        if (getter != null) {
+            return getter.is ? invokeIs(getter) : invokeGet(getter);
+        }
         if (METHOD_HASH_CODE.equals(m.getName())) {
             return invokeHashCode(proxy);
         } else if (METHOD_EQUALS.equals(m.getName())) {
@@ -967,34 +2464,49 @@ public final class MapProxy implements InvocationHandler {
             invokeAddOrRemove(m, args, true);
         } else if (!METHOD_REMOVE.equals(m.getName()) && m.getName().startsWith(METHOD_REMOVE)) {
             invokeAddOrRemove(m, args, false);
+        } else if (!METHOD_ADD_ALL.equals(m.getName()) && m.getName().startsWith(METHOD_ADD_ALL) && m.getParameterCount() == 1) {
+            invokeBulkAddOrRemove(m, args, METHOD_ADD_ALL);
+        } else if (!METHOD_REMOVE_ALL.equals(m.getName()) && m.getName().startsWith(METHOD_REMOVE_ALL) && m.getParameterCount() == 1) {
+            invokeBulkAddOrRemove(m, args, METHOD_REMOVE_ALL);
+        } else if (!METHOD_REMOVE_IF.equals(m.getName()) && m.getName().startsWith(METHOD_REMOVE_IF) && m.getParameterCount() == 1) {
+            invokeBulkAddOrRemove(m, args, METHOD_REMOVE_IF);
         } else if (METHOD_GET_ORIGINAL_MAP.equals(m.getName())) {
             return original;
         } else if (METHOD_GET_INTERNAL_MAP.equals(m.getName())) {
             return internal;
         } else if (!METHOD_GET.equals(m.getName()) && m.getName().startsWith(METHOD_GET)) {
-            return invokeGet(m);
+            return invokeGet(getGetterInfo(m, METHOD_GET));
         } else if (!METHOD_IS.equals(m.getName()) && m.getName().startsWith(METHOD_IS)) {
-            return invokeIs(m);
+            return invokeIs(getGetterInfo(m, METHOD_IS));
+        } else if (METHOD_CHANGED_KEYS.equals(m.getName()) && m.getParameterCount() == 0) {
+            return invokeChangedKeys();
+        } else if (METHOD_TO_DELTA_MAP.equals(m.getName()) && m.getParameterCount() == 0) {
+            return invokeToDeltaMap();
+        } else if (METHOD_MARK_CLEAN.equals(m.getName()) && m.getParameterCount() == 0) {
+            invokeMarkClean();
+        } else if (METHOD_COMPUTE.equals(m.getName()) && m.getParameterCount() == 2) {
+            return invokeCompute(args);
+        } else if (METHOD_FREEZE.equals(m.getName()) && m.getParameterCount() == 0) {
+            invokeFreeze(proxy);
         } else if (METHOD_TO_MAP.equals(m.getName())) {
-            return invokeToMap();
+            return invokeToMap(m.getParameterCount() == 1 ? (FieldMask) args[0] : null);
         } else if (METHOD_TO_STRING.equals(m.getName())) {
             return invokeToString(proxy);
         } else if (METHOD_ADAPT_TO.equals(m.getName())) {
             return invokeAdaptTo(proxy, args);
         } else if (m.getReturnType().isInterface() && m.getParameterCount() == 0 && m.isAnnotationPresent(Embedded.class)) {
-            return invokeGet(m);
+            return invokeGet(getGetterInfo(m, null));
         }
         return null;
     }
 
     private static Object getValueAs(Object value, Class clazz, String errorPattern) {
-        final Class valueClass = value != null ? value.getClass() : Void.class;
-        final Optional<Class> valuePrimitiveClass = PRIMITIVES_TO_WRAPPERS.entrySet().stream()
-                .filter(e -> Objects.equals(valueClass, e.getValue()))
-                .map(e -> (Class) e.getKey())
-                .findAny();
-
-        if (value == null || clazz.isAssignableFrom(value.getClass()) || valuePrimitiveClass.isPresent() && clazz.isAssignableFrom(valuePrimitiveClass.get())) {
+        if (value == null || clazz.isInstance(value)) {
+            return value;
+        }
+        final Class valueClass = value.getClass();
+        final Class valuePrimitiveClass = WRAPPERS_TO_PRIMITIVES.get(valueClass);
+        if (valuePrimitiveClass != null && clazz.isAssignableFrom(valuePrimitiveClass)) {
             return value;
         }
 
@@ -1003,9 +2515,9 @@ public final class MapProxy implements InvocationHandler {
         } catch (Exception ex) {
             log.debug("Constructor not found to convert value");
         }
-        if (valuePrimitiveClass.isPresent()) {
+        if (valuePrimitiveClass != null) {
             try {
-                return clazz.getConstructor(valuePrimitiveClass.get()).newInstance(value);
+                return clazz.getConstructor(valuePrimitiveClass).newInstance(value);
             } catch (Exception ex) {
                 log.debug("Constructor not found to convert primitive value");
             }
@@ -1015,9 +2527,9 @@ public final class MapProxy implements InvocationHandler {
         } catch (Exception ex) {
             log.debug("Parse method not found to convert value");
         }
-        if (valuePrimitiveClass.isPresent()) {
+        if (valuePrimitiveClass != null) {
             try {
-                return clazz.getMethod(METHOD_PARSE, valuePrimitiveClass.get()).invoke(null, value);
+                return clazz.getMethod(METHOD_PARSE, valuePrimitiveClass).invoke(null, value);
             } catch (Exception ex) {
                 log.debug("Parse method not found to convert primitive value");
             }
@@ -1046,7 +2558,7 @@ public final class MapProxy implements InvocationHandler {
         return collector;
     }
 
-    private static Class getRawType(ParameterizedType parameterizedType, int argnum) {
+    static Class getRawType(ParameterizedType parameterizedType, int argnum) {
         Type collectionGenericType = parameterizedType.getActualTypeArguments()[argnum];
         if (collectionGenericType instanceof ParameterizedType) {
             return (Class) ((ParameterizedType) collectionGenericType).getRawType();
@@ -1068,21 +2580,35 @@ public final class MapProxy implements InvocationHandler {
         return (o) -> toValue(proxyClass, o, params);
     }
 
-    private static Object toValue(Class proxyClass, Object value, MapProxyParams params) {
+    static Object toValue(Class proxyClass, Object value, MapProxyParams params) {
+        return toValue(proxyClass, value, params, null);
+    }
+
+    /**
+     * Converts the value to its map representation, the nested proxies are exported with the given mask.
+     */
+    static Object toValue(Class proxyClass, Object value, MapProxyParams params, FieldMask mask) {
         if (value instanceof MapHolder) {
-            return ((MapHolder) value).toMap();
+            return mask == null ? ((MapHolder) value).toMap() : ((MapHolder) value).toMap(mask);
         } else if (value instanceof Map) {
-            final Map<Object, Object> map = new LinkedHashMap<>();
-            ((Map<Object, Object>) value).forEach((k,v) ->
-                map.put(
-                        keyName(proxyClass).andThen(toValueFunction(proxyClass, params)).apply(k),
-                        toValueFunction(proxyClass, params).apply(v)
-                ));
-            return map;
+            Object target = mask == null ? Map.class : mask;
+            return ConversionContext.convert(value, target, () -> {
+                final Map<Object, Object> map = new LinkedHashMap<>();
+                ConversionContext.register(value, target, map);
+                if (mask == null) {
+                    ConversionContext.alias(map, value);
+                }
+                ((Map<Object, Object>) value).forEach((k,v) ->
+                    map.put(
+                            keyName(proxyClass).andThen(toValueFunction(proxyClass, params)).apply(k),
+                            toValue(proxyClass, v, params, mask)
+                    ));
+                return map;
+            });
         } else if (value instanceof Collection) {
             return ((Collection) value).stream().map(v -> {
                 if (v instanceof MapHolder) {
-                    return ((MapHolder) v).toMap();
+                    return mask == null ? ((MapHolder) v).toMap() : ((MapHolder) v).toMap(mask);
                 } else {
                     return v;
                 }
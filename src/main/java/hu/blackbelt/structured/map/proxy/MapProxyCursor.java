@@ -0,0 +1,53 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Map;
+
+/**
+ * A single read-only proxy which is bound to one map after the other. Binding a row does not create a new proxy,
+ * handler or storage, the row is used as the storage as is. The values which do not fit the attribute types
+ * (nested maps, enum mapped values) are converted when they are read and kept until the next row is bound.
+ *
+ * The proxy returned by {@link #bind(Map)} must not be kept after the next call of {@link #bind(Map)}.
+ */
+public final class MapProxyCursor<T> {
+
+    private final T proxy;
+    private final MapProxy handler;
+
+    MapProxyCursor(T proxy, MapProxy handler) {
+        this.proxy = proxy;
+        this.handler = handler;
+    }
+
+    public T bind(Map<String, ?> row) {
+        if (row == null) {
+            throw new IllegalArgumentException("Row is mandatory");
+        }
+        handler.bind(row);
+        return proxy;
+    }
+
+    public T get() {
+        return proxy;
+    }
+}
@@ -0,0 +1,303 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableList;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Differences between two proxies of the same interface. The storages are compared by map key and values shared
+ * by reference are skipped, so the nested proxies and collections shared by the proxies are not visited. The
+ * values are compared as the getters return them, so lazily converted storages are equal to converted ones.
+ *
+ * The elements of collections of proxies can be matched by an identity key (a map key, for example
+ * {@code __id}). Matched elements are compared recursively, the others are reported as added or removed, the
+ * order of the elements is not compared. Without identity key, or when an element has no identity, a collection
+ * which differs is reported as a whole.
+ *
+ * The changes can be applied as a patch on a proxy equal to the first one with {@link #applyTo(Object)}.
+ */
+public final class MapProxyDiff {
+
+    public enum Operation {
+        /** The value of the attribute is set, it was missing or different. */
+        SET,
+        /** The attribute is removed from the storage. */
+        UNSET,
+        /** The element is added to the collection attribute. */
+        ADD,
+        /** The element with the identity of the last path segment is removed from the collection attribute. */
+        REMOVE
+    }
+
+    /**
+     * A single change. The path contains map keys, a map key of a collection attribute is followed by the
+     * identity of the element when the change is made inside of a matched element.
+     */
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    public static final class Change {
+        private final Operation operation;
+        private final List<Object> path;
+        private final Object oldValue;
+        private final Object newValue;
+
+        private Change(Operation operation, List<Object> path, Object oldValue, Object newValue) {
+            this.operation = operation;
+            this.path = ImmutableList.copyOf(path);
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+    }
+
+    private final String identityKey;
+    private final List<Change> changes;
+
+    private MapProxyDiff(String identityKey, List<Change> changes) {
+        this.identityKey = identityKey;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    public static <T> MapProxyDiff compare(T a, T b) {
+        return compare(a, b, null);
+    }
+
+    public static <T> MapProxyDiff compare(T a, T b, String identityKey) {
+        MapProxy handlerA = getProxyHandler(a);
+        MapProxy handlerB = getProxyHandler(b);
+        if (handlerA.clazz != handlerB.clazz) {
+            throw new IllegalArgumentException(String.format("Only proxies of the same interface can be compared, got %s and %s.", handlerA.clazz.getName(), handlerB.clazz.getName()));
+        }
+        List<Change> changes = new ArrayList<>();
+        new MapProxyDiff(identityKey, changes).compareStorage(new ArrayList<>(), handlerA, handlerB, changes);
+        return new MapProxyDiff(identityKey, changes);
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Applies the changes on the given mutable proxy. The mutable values are copied, so the target does not
+     * share them with the compared proxy.
+     */
+    public void applyTo(Object target) {
+        MapProxy root = getProxyHandler(target);
+        for (Change change : changes) {
+            List<Object> path = change.getPath();
+            int last = change.getOperation() == Operation.REMOVE ? path.size() - 2 : path.size() - 1;
+            MapProxy handler = resolve(root, path, last);
+            String mapKey = (String) path.get(last);
+            switch (change.getOperation()) {
+                case SET:
+                    handler.applyValue(mapKey, MapProxy.copyValue(change.getNewValue()));
+                    break;
+                case UNSET:
+                    handler.applyRemove(mapKey);
+                    break;
+                case ADD:
+                    Object element = MapProxy.copyValue(change.getNewValue());
+                    handler.applyToCollection(mapKey, elements -> elements.add(element));
+                    break;
+                case REMOVE:
+                    Object identity = path.get(last + 1);
+                    handler.applyToCollection(mapKey, elements -> elements.removeIf(e -> Objects.equals(identity, getIdentity(e))));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation " + change.getOperation());
+            }
+        }
+    }
+
+    private MapProxy resolve(MapProxy root, List<Object> path, int last) {
+        MapProxy handler = root;
+        int i = 0;
+        while (i < last) {
+            Object value = handler.getConvertedValue((String) path.get(i));
+            if (value instanceof Collection && i + 1 < last) {
+                Object identity = path.get(i + 1);
+                value = ((Collection<?>) value).stream()
+                        .filter(e -> Objects.equals(identity, getIdentity(e)))
+                        .findFirst()
+                        .orElse(null);
+                i += 2;
+            } else {
+                i++;
+            }
+            handler = MapProxy.getHandler(value);
+            if (handler == null) {
+                throw new IllegalArgumentException(String.format("The path %s could not be resolved in %s.", path, root.clazz.getName()));
+            }
+        }
+        return handler;
+    }
+
+    private void compareStorage(List<Object> path, MapProxy a, MapProxy b, List<Change> changes) {
+        if (a.getStoredValues() == b.getStoredValues()) {
+            return;
+        }
+        Set<String> keys = new LinkedHashSet<>(a.getStoredKeys());
+        keys.addAll(b.getStoredKeys());
+        for (String mapKey : keys) {
+            boolean inA = a.hasStoredValue(mapKey);
+            boolean inB = b.hasStoredValue(mapKey);
+            Object valueA = inA ? a.getConvertedValue(mapKey) : null;
+            Object valueB = inB ? b.getConvertedValue(mapKey) : null;
+            path.add(mapKey);
+            if (!inB) {
+                if (inA) {
+                    changes.add(new Change(Operation.UNSET, path, valueA, null));
+                }
+            } else if (!inA) {
+                changes.add(new Change(Operation.SET, path, null, valueB));
+            } else {
+                compareValue(path, valueA, valueB, changes);
+            }
+            path.remove(path.size() - 1);
+        }
+    }
+
+    private void compareValue(List<Object> path, Object a, Object b, List<Change> changes) {
+        if (a == b) {
+            return;
+        }
+        MapProxy handlerA = MapProxy.getHandler(a);
+        MapProxy handlerB = MapProxy.getHandler(b);
+        if (handlerA != null && handlerB != null && handlerA.clazz == handlerB.clazz) {
+            compareStorage(path, handlerA, handlerB, changes);
+            return;
+        }
+        if (a instanceof Collection && b instanceof Collection && compareElements(path, (Collection<?>) a, (Collection<?>) b, changes)) {
+            return;
+        }
+        if (!isSame(a, b)) {
+            changes.add(new Change(Operation.SET, path, a, b));
+        }
+    }
+
+    /**
+     * Compares the elements matched by identity. Returns false if the elements can not be matched.
+     */
+    private boolean compareElements(List<Object> path, Collection<?> a, Collection<?> b, List<Change> changes) {
+        Map<Object, Object> elementsA = indexByIdentity(a);
+        Map<Object, Object> elementsB = indexByIdentity(b);
+        if (elementsA == null || elementsB == null) {
+            return false;
+        }
+        elementsA.forEach((identity, element) -> {
+            path.add(identity);
+            if (elementsB.containsKey(identity)) {
+                compareValue(path, element, elementsB.get(identity), changes);
+            } else {
+                changes.add(new Change(Operation.REMOVE, path, element, null));
+            }
+            path.remove(path.size() - 1);
+        });
+        elementsB.forEach((identity, element) -> {
+            if (!elementsA.containsKey(identity)) {
+                changes.add(new Change(Operation.ADD, path, null, element));
+            }
+        });
+        return true;
+    }
+
+    private Map<Object, Object> indexByIdentity(Collection<?> elements) {
+        if (identityKey == null) {
+            return null;
+        }
+        Map<Object, Object> index = new LinkedHashMap<>();
+        for (Object element : elements) {
+            Object identity = getIdentity(element);
+            if (identity == null || index.put(identity, element) != null) {
+                return null;
+            }
+        }
+        return index;
+    }
+
+    private Object getIdentity(Object element) {
+        MapProxy handler = MapProxy.getHandler(element);
+        return handler != null ? handler.getConvertedValue(identityKey) : null;
+    }
+
+    private boolean isSame(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        MapProxy handlerA = MapProxy.getHandler(a);
+        MapProxy handlerB = MapProxy.getHandler(b);
+        if (handlerA != null || handlerB != null) {
+            if (handlerA == null || handlerB == null || handlerA.clazz != handlerB.clazz) {
+                return false;
+            }
+            List<Change> nested = new ArrayList<>();
+            compareStorage(new ArrayList<>(), handlerA, handlerB, nested);
+            return nested.isEmpty();
+        } else if (a instanceof Collection && b instanceof Collection) {
+            Collection<?> elementsA = (Collection<?>) a;
+            Collection<?> elementsB = (Collection<?>) b;
+            if (elementsA.size() != elementsB.size()) {
+                return false;
+            }
+            Iterator<?> iteratorB = elementsB.iterator();
+            for (Object element : elementsA) {
+                if (!isSame(element, iteratorB.next())) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (a instanceof Map && b instanceof Map) {
+            Map<?, ?> entriesA = (Map<?, ?>) a;
+            Map<?, ?> entriesB = (Map<?, ?>) b;
+            if (!entriesA.keySet().equals(entriesB.keySet())) {
+                return false;
+            }
+            return entriesA.entrySet().stream().allMatch(e -> isSame(e.getValue(), entriesB.get(e.getKey())));
+        }
+        return Objects.equals(a, b);
+    }
+
+    private static MapProxy getProxyHandler(Object proxy) {
+        MapProxy handler = MapProxy.getHandler(proxy);
+        if (handler == null) {
+            throw new IllegalArgumentException(String.format("Only proxies can be compared, got %s", proxy));
+        }
+        return handler;
+    }
+}
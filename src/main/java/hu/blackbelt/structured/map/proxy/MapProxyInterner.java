@@ -0,0 +1,167 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Canonicalizes structurally equal immutable proxies to one instance. The canonical instances are weakly
+ * referenced, they are dropped when they are not used anymore. The interner is thread-safe.
+ *
+ * Two proxies are structurally equal when they have the same interface and equal storage values. The nested
+ * proxies are compared by reference, so the nested proxies have to be interned first. This is the case for the
+ * proxies created by a builder with {@link MapProxy.Builder#withInterner} and for the proxies frozen with
+ * {@link MapHolder#freeze()} when their params have the interner.
+ */
+public final class MapProxyInterner {
+
+    private final Cache<StructuralKey, Object> proxies = CacheBuilder.newBuilder()
+            .weakValues()
+            .build();
+
+    /**
+     * Returns the canonical instance of the given immutable proxy, the proxy itself if there is none yet. A proxy
+     * which holds a mutable map or collection is not interned, its structure could change after its key is stored.
+     */
+    public <T> T intern(T proxy) {
+        MapProxy handler = MapProxy.getHandler(proxy);
+        if (handler == null || !handler.params.isImmutable()) {
+            throw new IllegalArgumentException(String.format("Only immutable proxies can be interned, got %s", proxy));
+        }
+        if (handler.interner == this || !handler.isGraphImmutable()) {
+            return proxy;
+        }
+        try {
+            T canonical = (T) proxies.get(new StructuralKey(handler.clazz, handler.getStoredValues()), () -> proxy);
+            if (canonical == proxy) {
+                handler.interner = this;
+            }
+            return canonical;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the approximate number of canonical instances.
+     */
+    public long size() {
+        proxies.cleanUp();
+        return proxies.size();
+    }
+
+    private static final class StructuralKey {
+        private final Class clazz;
+        private final Map<String, Object> values;
+        private final int hash;
+
+        private StructuralKey(Class clazz, Map<String, Object> values) {
+            this.clazz = clazz;
+            this.values = values;
+            this.hash = 31 * clazz.hashCode() + hash(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StructuralKey)) {
+                return false;
+            }
+            StructuralKey other = (StructuralKey) o;
+            return hash == other.hash && clazz == other.clazz && same(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static int hash(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (MapProxy.getHandler(value) != null) {
+            return System.identityHashCode(value);
+        } else if (value instanceof Collection) {
+            int h = 1;
+            for (Object element : (Collection<?>) value) {
+                h = 31 * h + hash(element);
+            }
+            return h;
+        } else if (value instanceof Map) {
+            int h = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                h += hash(entry.getKey()) ^ hash(entry.getValue());
+            }
+            return h;
+        }
+        return value.hashCode();
+    }
+
+    /**
+     * Compares the proxies by reference, the collections by their elements in iteration order, the other values
+     * with equals of the same class.
+     */
+    private static boolean same(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || MapProxy.getHandler(a) != null || MapProxy.getHandler(b) != null) {
+            return false;
+        }
+        if (a instanceof Collection && b instanceof Collection) {
+            Collection<?> elementsA = (Collection<?>) a;
+            Collection<?> elementsB = (Collection<?>) b;
+            if (elementsA.size() != elementsB.size() || (a instanceof Set) != (b instanceof Set)) {
+                return false;
+            }
+            Iterator<?> iteratorB = elementsB.iterator();
+            for (Object element : elementsA) {
+                if (!same(element, iteratorB.next())) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (a instanceof Map && b instanceof Map) {
+            Map<?, ?> entriesA = (Map<?, ?>) a;
+            Map<?, ?> entriesB = (Map<?, ?>) b;
+            if (entriesA.size() != entriesB.size()) {
+                return false;
+            }
+            for (Map.Entry<?, ?> entry : entriesA.entrySet()) {
+                if (!entriesB.containsKey(entry.getKey()) || !same(entry.getValue(), entriesB.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return a.getClass() == b.getClass() && a.equals(b);
+    }
+}
@@ -0,0 +1,148 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Build time generator of the GraalVM native image reachability metadata of proxy interfaces. The proxy
+ * configuration of the given interfaces and the interfaces reachable through their attributes, the reflection
+ * configuration of these interfaces and of the attribute types (enums, value types created by constructor or
+ * <code>parse</code> method) and the resource configuration of the schema snapshots are written into the output
+ * directory, which should be the native image directory of the artifact:
+ *
+ * <pre>
+ * java -cp ... hu.blackbelt.structured.map.proxy.MapProxyNativeImageGenerator target/classes/META-INF/native-image/com.example/app com.example.User
+ * </pre>
+ *
+ * Beans used with {@link MapProxy.Builder#withBean} and builder interfaces of {@link MapBuilderProxy} have to be
+ * registered separately.
+ */
+public final class MapProxyNativeImageGenerator {
+
+    public static final String REFLECT_CONFIG = "reflect-config.json";
+    public static final String PROXY_CONFIG = "proxy-config.json";
+    public static final String RESOURCE_CONFIG = "resource-config.json";
+
+    private MapProxyNativeImageGenerator() {
+    }
+
+    public static void main(String[] args) throws ClassNotFoundException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: MapProxyNativeImageGenerator <output directory> <interface class name>...");
+        }
+        Class[] classes = new Class[args.length - 1];
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        for (int i = 1; i < args.length; i++) {
+            classes[i - 1] = Class.forName(args[i], false, classLoader);
+        }
+        generate(Paths.get(args[0]), classes);
+    }
+
+    /**
+     * Writes the configuration files of the given interfaces and the interfaces referenced by their attributes.
+     * Returns the interfaces registered as proxies.
+     */
+    public static Set<Class> generate(Path outputDirectory, Class... classes) {
+        Set<Class> interfaces = MapProxySchemaGenerator.collectInterfaces(classes);
+
+        Set<Class> reflected = new LinkedHashSet<>();
+        reflected.add(MapHolder.class);
+        Set<Class> valueTypes = new LinkedHashSet<>();
+        List<String> proxies = new ArrayList<>();
+        for (Class clazz : interfaces) {
+            reflected.addAll(Arrays.asList(MapProxy.getProxyInterfaces(clazz)));
+            for (MapProxy.AttributeInfo attributeInfo : MapProxy.getTypeInfo(clazz).values()) {
+                addValueType(valueTypes, attributeInfo.getPropertyType());
+                addValueTypes(valueTypes, attributeInfo.getParameterType());
+            }
+            proxies.add(Arrays.stream(MapProxy.getProxyInterfaces(clazz))
+                    .map(i -> quote(i.getName()))
+                    .collect(Collectors.joining(", ", "  {\"interfaces\": [", "]}")));
+        }
+
+        List<String> reflections = new ArrayList<>();
+        for (Class clazz : reflected) {
+            reflections.add("  {\"name\": " + quote(clazz.getName()) + ", \"allPublicMethods\": true}");
+        }
+        for (Class clazz : valueTypes) {
+            reflections.add("  {\"name\": " + quote(clazz.getName()) + ", \"allPublicConstructors\": true, \"allPublicMethods\": true}");
+        }
+
+        write(outputDirectory.resolve(PROXY_CONFIG), toArray(proxies));
+        write(outputDirectory.resolve(REFLECT_CONFIG), toArray(reflections));
+        write(outputDirectory.resolve(RESOURCE_CONFIG), "{\"resources\": {\"includes\": [{\"pattern\": "
+                + quote("\\Q" + MapProxySchema.RESOURCE_PREFIX + "\\E.*") + "}]}}\n");
+        return interfaces;
+    }
+
+    private static void addValueTypes(Set<Class> valueTypes, ParameterizedType parameterizedType) {
+        if (parameterizedType == null) {
+            return;
+        }
+        for (Type type : parameterizedType.getActualTypeArguments()) {
+            if (type instanceof Class) {
+                addValueType(valueTypes, (Class) type);
+            } else if (type instanceof ParameterizedType) {
+                addValueTypes(valueTypes, (ParameterizedType) type);
+            }
+        }
+    }
+
+    private static void addValueType(Set<Class> valueTypes, Class type) {
+        if (!type.isInterface() && !type.isPrimitive() && !type.isArray()) {
+            valueTypes.add(type);
+        }
+    }
+
+    private static String toArray(List<String> entries) {
+        return entries.isEmpty() ? "[]\n" : entries.stream().collect(Collectors.joining(",\n", "[\n", "\n]\n"));
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static void write(Path file, String content) {
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write(content);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + file, e);
+        }
+    }
+}
@@ -26,6 +26,8 @@ public class MapProxyParams {
     private String identifierField;
     private String enumMappingMethod = MapProxy.DEFAULT_ENUM_MAPPING_METHOD;
     private boolean mapNullToOptionalAbsent = false;
+    private boolean concurrent = false;
+    private MapProxyInterner interner;
 
     public boolean isImmutable() {
         return immutable;
@@ -58,4 +60,28 @@ public class MapProxyParams {
     public void setMapNullToOptionalAbsent(boolean mapNullToOptionalAbsent) {
         this.mapNullToOptionalAbsent = mapNullToOptionalAbsent;
     }
+
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * Mutable proxies can be shared between threads. Reads are lock-free, collection updates and
+     * {@link MapHolder#compute} are atomic.
+     */
+    public void setConcurrent(boolean concurrent) {
+        this.concurrent = concurrent;
+    }
+
+    public MapProxyInterner getInterner() {
+        return interner;
+    }
+
+    /**
+     * Immutable proxies are canonicalized by the interner when they are created or frozen, so structurally
+     * equal proxies share one instance.
+     */
+    public void setInterner(MapProxyInterner interner) {
+        this.interner = interner;
+    }
 }
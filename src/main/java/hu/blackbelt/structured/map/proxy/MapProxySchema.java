@@ -0,0 +1,270 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.hash.Hashing;
+import hu.blackbelt.structured.map.proxy.MapProxy.AttributeInfo;
+import hu.blackbelt.structured.map.proxy.annotation.Embedded;
+import hu.blackbelt.structured.map.proxy.annotation.Key;
+import lombok.extern.slf4j.Slf4j;
+
+import java.beans.IntrospectionException;
+import java.beans.PropertyDescriptor;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Schema snapshots of proxy interfaces. A snapshot contains the attributes (map key, read and write method,
+ * embedded flag) and the static equals, hashCode and toString methods of an interface, so the type information
+ * can be created without {@link java.beans.Introspector} and method scans. The snapshots are generated at build
+ * time with {@link MapProxySchemaGenerator} as {@value #RESOURCE_PREFIX}&lt;class name&gt;{@value #RESOURCE_SUFFIX}
+ * resources. A snapshot is used only if the fingerprint of the methods of the interface has not changed since it
+ * was generated.
+ */
+@Slf4j
+final class MapProxySchema {
+
+    static final String RESOURCE_PREFIX = "META-INF/structured-map-proxy/";
+    static final String RESOURCE_SUFFIX = ".schema";
+
+    private static final String VERSION = "2";
+    private static final String NONE = "-";
+    private static final String SEPARATOR = "\t";
+
+    private static final String RECORD_VERSION = "version";
+    private static final String RECORD_FINGERPRINT = "fingerprint";
+    private static final String RECORD_ATTRIBUTE = "attribute";
+    private static final String RECORD_EMBEDDED = "embedded";
+    private static final String RECORD_STATIC = "static";
+
+    private static final Map<String, Class> PRIMITIVES = Arrays.stream(new Class[] {
+            boolean.class, byte.class, char.class, double.class, float.class, int.class, long.class, short.class})
+            .collect(Collectors.toMap(Class::getName, c -> c));
+
+    private MapProxySchema() {
+    }
+
+    static String getResourceName(Class clazz) {
+        return RESOURCE_PREFIX + clazz.getName() + RESOURCE_SUFFIX;
+    }
+
+    /**
+     * Returns the type information of the snapshot of the given interface, or null when there is no usable snapshot.
+     */
+    static Map<String, AttributeInfo> loadTypeInfo(Class clazz) {
+        List<String[]> records = loadRecords(clazz);
+        if (records == null) {
+            return null;
+        }
+        try {
+            return toTypeInfo(clazz, records);
+        } catch (ReflectiveOperationException | IntrospectionException | RuntimeException e) {
+            log.debug("Schema snapshot of {} does not match the class, falling back to introspection", clazz.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the static methods of the snapshot of the given interface, or null when there is no usable snapshot.
+     */
+    static Map<String, Method> loadStaticMethods(Class clazz) {
+        List<String[]> records = loadRecords(clazz);
+        if (records == null) {
+            return null;
+        }
+        try {
+            return toStaticMethods(clazz, records);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Schema snapshot of {} does not match the class, falling back to introspection", clazz.getName(), e);
+            return null;
+        }
+    }
+
+    private static List<String[]> loadRecords(Class clazz) {
+        if (!clazz.isInterface() || clazz.getClassLoader() == null) {
+            return null;
+        }
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(getResourceName(clazz))) {
+            if (in == null) {
+                return null;
+            }
+            List<String[]> records = read(in);
+            if (!isCurrent(clazz, records)) {
+                log.debug("Schema snapshot of {} was generated for another version of the class, falling back to introspection", clazz.getName());
+                return null;
+            }
+            return records;
+        } catch (IOException e) {
+            log.debug("Could not read schema snapshot of {}", clazz.getName(), e);
+            return null;
+        }
+    }
+
+    static List<String[]> read(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String[]> records = new ArrayList<>();
+        String line = reader.readLine();
+        if (line == null || !Arrays.equals(line.split(SEPARATOR), new String[] {RECORD_VERSION, VERSION})) {
+            throw new IOException("Unsupported schema snapshot version: " + line);
+        }
+        while ((line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {
+                records.add(line.split(SEPARATOR));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Returns true if the snapshot records were generated for the current methods of the given interface.
+     */
+    static boolean isCurrent(Class clazz, List<String[]> records) {
+        String fingerprint = fingerprint(clazz);
+        return records.stream().anyMatch(record -> RECORD_FINGERPRINT.equals(record[0]) && record.length > 1 && fingerprint.equals(record[1]));
+    }
+
+    /**
+     * Returns the hash of the signatures of the public methods of the interface and its super interfaces, with
+     * their {@link Key} and {@link Embedded} annotations.
+     */
+    static String fingerprint(Class clazz) {
+        SortedSet<String> signatures = new TreeSet<>();
+        for (Class type : MapProxy.getWithSuperClasses(clazz)) {
+            for (Method method : type.getDeclaredMethods()) {
+                if (!Modifier.isPublic(method.getModifiers())) {
+                    continue;
+                }
+                StringBuilder signature = new StringBuilder(method.toGenericString());
+                Key key = method.getDeclaredAnnotation(Key.class);
+                if (key != null) {
+                    signature.append(" @Key(").append(key.name()).append(')');
+                }
+                if (method.isAnnotationPresent(Embedded.class)) {
+                    signature.append(" @Embedded");
+                }
+                signatures.add(signature.toString());
+            }
+        }
+        return Hashing.sha256().hashString(String.join("\n", signatures), StandardCharsets.UTF_8).toString();
+    }
+
+    static Map<String, AttributeInfo> toTypeInfo(Class clazz, List<String[]> records) throws ReflectiveOperationException, IntrospectionException {
+        Map<String, AttributeInfo> typeInfo = new ConcurrentHashMap<>();
+        for (String[] record : records) {
+            if (RECORD_ATTRIBUTE.equals(record[0])) {
+                String propertyName = record[1];
+                Method readMethod = NONE.equals(record[4]) ? null : clazz.getMethod(record[4]);
+                Method writeMethod = NONE.equals(record[5]) ? null : clazz.getMethod(record[5], toClass(clazz, record[6]));
+                PropertyDescriptor propertyDescriptor = new PropertyDescriptor(propertyName, readMethod, writeMethod);
+                String attrName = Character.toLowerCase(propertyName.charAt(0)) + propertyName.substring(1);
+                typeInfo.put(attrName, new AttributeInfo(record[2], propertyDescriptor.getPropertyType(),
+                        getParameterizedType(readMethod, writeMethod), propertyDescriptor, Boolean.parseBoolean(record[3])));
+            } else if (RECORD_EMBEDDED.equals(record[0])) {
+                Method method = clazz.getMethod(record[1]);
+                typeInfo.put(method.getName(), new AttributeInfo(method.getName(), method.getReturnType(), null, null, true));
+            }
+        }
+        return typeInfo;
+    }
+
+    static Map<String, Method> toStaticMethods(Class clazz, List<String[]> records) throws ReflectiveOperationException {
+        Map<String, Method> staticMethods = new HashMap<>();
+        for (String[] record : records) {
+            if (RECORD_STATIC.equals(record[0])) {
+                Class declaringClass = toClass(clazz, record[2]);
+                Class[] parameterTypes = new Class[record.length - 4];
+                for (int i = 0; i < parameterTypes.length; i++) {
+                    parameterTypes[i] = toClass(clazz, record[i + 4]);
+                }
+                staticMethods.put(record[1], declaringClass.getMethod(record[3], parameterTypes));
+            }
+        }
+        return staticMethods;
+    }
+
+    /**
+     * Writes the snapshot of the given interface, created by introspection.
+     */
+    static void write(Class clazz, Writer writer) throws IntrospectionException {
+        PrintWriter out = new PrintWriter(writer);
+        out.print(String.join(SEPARATOR, RECORD_VERSION, VERSION) + "\n");
+        out.print(String.join(SEPARATOR, RECORD_FINGERPRINT, fingerprint(clazz)) + "\n");
+        for (AttributeInfo attributeInfo : MapProxy.introspectTypeInfo(clazz).values()) {
+            PropertyDescriptor propertyDescriptor = attributeInfo.getPropertyDescriptor();
+            if (propertyDescriptor == null) {
+                out.print(String.join(SEPARATOR, RECORD_EMBEDDED, attributeInfo.getMapKey()) + "\n");
+            } else {
+                Method readMethod = propertyDescriptor.getReadMethod();
+                Method writeMethod = propertyDescriptor.getWriteMethod();
+                out.print(String.join(SEPARATOR, RECORD_ATTRIBUTE,
+                        propertyDescriptor.getName(),
+                        attributeInfo.getMapKey(),
+                        Boolean.toString(attributeInfo.isComposite()),
+                        readMethod != null ? readMethod.getName() : NONE,
+                        writeMethod != null ? writeMethod.getName() : NONE,
+                        writeMethod != null ? writeMethod.getParameterTypes()[0].getName() : NONE) + "\n");
+            }
+        }
+        MapProxy.introspectStaticMethods(clazz).forEach((hook, method) -> {
+            List<String> record = new ArrayList<>(Arrays.asList(RECORD_STATIC, hook, method.getDeclaringClass().getName(), method.getName()));
+            Arrays.stream(method.getParameterTypes()).map(Class::getName).forEach(record::add);
+            out.print(String.join(SEPARATOR, record) + "\n");
+        });
+        out.flush();
+    }
+
+    private static ParameterizedType getParameterizedType(Method readMethod, Method writeMethod) {
+        Type genericType = null;
+        if (readMethod != null) {
+            genericType = readMethod.getGenericReturnType();
+        }
+        if (genericType == null && writeMethod != null) {
+            genericType = writeMethod.getGenericParameterTypes()[0];
+        }
+        return genericType instanceof ParameterizedType ? (ParameterizedType) genericType : null;
+    }
+
+    private static Class toClass(Class clazz, String name) throws ClassNotFoundException {
+        Class primitive = PRIMITIVES.get(name);
+        if (primitive != null) {
+            return primitive;
+        }
+        return Class.forName(name, false, clazz.getClassLoader());
+    }
+}
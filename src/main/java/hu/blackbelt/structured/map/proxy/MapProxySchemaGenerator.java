@@ -0,0 +1,128 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.beans.IntrospectionException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Build time generator of schema snapshots. Loading the type information of a proxy interface from its snapshot
+ * avoids the {@link java.beans.Introspector} run on the first use of the interface. The snapshots of the given
+ * interfaces and the interfaces reachable through their attributes are written into the output directory, which
+ * should be the classes directory of the build:
+ *
+ * <pre>
+ * java -cp ... hu.blackbelt.structured.map.proxy.MapProxySchemaGenerator target/classes com.example.User com.example.Order
+ * </pre>
+ *
+ * Interfaces without snapshot are introspected at runtime as before.
+ */
+public final class MapProxySchemaGenerator {
+
+    private MapProxySchemaGenerator() {
+    }
+
+    public static void main(String[] args) throws ClassNotFoundException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: MapProxySchemaGenerator <output directory> <interface class name>...");
+        }
+        Class[] classes = new Class[args.length - 1];
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        for (int i = 1; i < args.length; i++) {
+            classes[i - 1] = Class.forName(args[i], false, classLoader);
+        }
+        generate(Paths.get(args[0]), classes);
+    }
+
+    /**
+     * Writes the snapshots of the given interfaces and the interfaces referenced by their attributes.
+     * Returns the interfaces whose snapshot was written.
+     */
+    public static Set<Class> generate(Path outputDirectory, Class... classes) {
+        Set<Class> generated = collectInterfaces(classes);
+        for (Class clazz : generated) {
+            Path resource = outputDirectory.resolve(MapProxySchema.getResourceName(clazz));
+            try {
+                Files.createDirectories(resource.getParent());
+                try (Writer writer = Files.newBufferedWriter(resource, StandardCharsets.UTF_8)) {
+                    MapProxySchema.write(clazz, writer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write " + resource, e);
+            } catch (IntrospectionException e) {
+                throw new IllegalArgumentException("Could not introspect " + clazz.getName(), e);
+            }
+        }
+        return generated;
+    }
+
+    /**
+     * Returns the given interfaces and the interfaces reachable through their attributes.
+     */
+    static Set<Class> collectInterfaces(Class... classes) {
+        Set<Class> collected = new LinkedHashSet<>();
+        Deque<Class> queue = new ArrayDeque<>();
+        for (Class clazz : classes) {
+            queue.add(clazz);
+        }
+        while (!queue.isEmpty()) {
+            Class clazz = queue.poll();
+            if (!clazz.isInterface() || clazz.getName().startsWith("java.") || !collected.add(clazz)) {
+                continue;
+            }
+            try {
+                for (MapProxy.AttributeInfo attributeInfo : MapProxy.introspectTypeInfo(clazz).values()) {
+                    queue.add(attributeInfo.getPropertyType());
+                    addTypeArguments(queue, attributeInfo.getParameterType());
+                }
+            } catch (IntrospectionException e) {
+                throw new IllegalArgumentException("Could not introspect " + clazz.getName(), e);
+            }
+        }
+        return collected;
+    }
+
+    private static void addTypeArguments(Deque<Class> queue, ParameterizedType parameterizedType) {
+        if (parameterizedType == null) {
+            return;
+        }
+        for (Type type : parameterizedType.getActualTypeArguments()) {
+            if (type instanceof Class) {
+                queue.add((Class) type);
+            } else if (type instanceof ParameterizedType) {
+                queue.add((Class) ((ParameterizedType) type).getRawType());
+                addTypeArguments(queue, (ParameterizedType) type);
+            }
+        }
+    }
+}
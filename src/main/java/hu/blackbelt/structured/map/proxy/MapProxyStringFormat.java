@@ -0,0 +1,245 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+
+import static hu.blackbelt.structured.map.proxy.MapProxy.STRUCTURED_MAP_PROXY_TO_STRING_MAX_DEPTH;
+import static hu.blackbelt.structured.map.proxy.MapProxy.STRUCTURED_MAP_PROXY_TO_STRING_MAX_ELEMENTS;
+import static hu.blackbelt.structured.map.proxy.MapProxy.STRUCTURED_MAP_PROXY_TO_STRING_MAX_LENGTH;
+
+/**
+ * Renders proxies as <code>PROXY{key=value, ...}</code> with the keys in sorted order, straight into a
+ * {@link StringBuilder}. The nesting depth of proxies, collections and maps, the number of elements printed per
+ * collection or map and the total length can be limited, the omitted parts are marked with <code>...</code>.
+ *
+ * The <code>toString</code> of the proxies uses {@link #getDefault()}, which is configured by system properties and
+ * is unlimited by default. The fallback <code>equals</code> and <code>hashCode</code> always use {@link #UNLIMITED}.
+ */
+public final class MapProxyStringFormat {
+
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    public static final MapProxyStringFormat UNLIMITED_FORMAT = new MapProxyStringFormat(UNLIMITED, UNLIMITED, UNLIMITED);
+
+    private static final MapProxyStringFormat DEFAULT_FORMAT = new MapProxyStringFormat(
+            Integer.getInteger(STRUCTURED_MAP_PROXY_TO_STRING_MAX_DEPTH, UNLIMITED),
+            Integer.getInteger(STRUCTURED_MAP_PROXY_TO_STRING_MAX_ELEMENTS, UNLIMITED),
+            Integer.getInteger(STRUCTURED_MAP_PROXY_TO_STRING_MAX_LENGTH, UNLIMITED));
+
+    private static final String TRUNCATED = "...";
+    // Larger builders are not kept for reuse
+    private static final int MAX_REUSED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUILDERS = new ThreadLocal<>();
+
+    private final int maxDepth;
+    private final int maxElements;
+    private final int maxLength;
+
+    private MapProxyStringFormat(int maxDepth, int maxElements, int maxLength) {
+        this.maxDepth = maxDepth;
+        this.maxElements = maxElements;
+        this.maxLength = maxLength;
+    }
+
+    public static MapProxyStringFormat getDefault() {
+        return DEFAULT_FORMAT;
+    }
+
+    /**
+     * Returns a format printing the given levels of nested proxies, collections and maps, 1 means the attributes of
+     * the proxy itself with their nested values omitted.
+     */
+    public MapProxyStringFormat withMaxDepth(int maxDepth) {
+        return new MapProxyStringFormat(checkLimit(maxDepth), maxElements, maxLength);
+    }
+
+    public MapProxyStringFormat withMaxElements(int maxElements) {
+        return new MapProxyStringFormat(maxDepth, checkLimit(maxElements), maxLength);
+    }
+
+    public MapProxyStringFormat withMaxLength(int maxLength) {
+        return new MapProxyStringFormat(maxDepth, maxElements, checkLimit(maxLength));
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxElements() {
+        return maxElements;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public boolean isUnlimited() {
+        return maxDepth == UNLIMITED && maxElements == UNLIMITED && maxLength == UNLIMITED;
+    }
+
+    public String format(Object value) {
+        StringBuilder out = BUILDERS.get();
+        if (out == null) {
+            out = new StringBuilder();
+        } else {
+            // A static toString of an interface can format other proxies while the builder is in use
+            BUILDERS.set(null);
+        }
+        try {
+            appendTo(value, out);
+            return out.toString();
+        } finally {
+            if (out.capacity() <= MAX_REUSED_CAPACITY) {
+                out.setLength(0);
+                BUILDERS.set(out);
+            }
+        }
+    }
+
+    public void appendTo(Object value, StringBuilder out) {
+        int start = out.length();
+        appendValue(value, out, start, 0);
+        if (out.length() - start > maxLength) {
+            out.setLength(start + maxLength);
+            out.append(TRUNCATED);
+        }
+    }
+
+    private void appendValue(Object value, StringBuilder out, int start, int depth) {
+        MapProxy handler = MapProxy.getHandler(value);
+        if (handler != null) {
+            appendProxy(handler, value, out, start, depth);
+        } else if (value instanceof Collection) {
+            appendCollection((Collection<?>) value, out, start, depth);
+        } else if (value instanceof Map) {
+            appendMap((Map<?, ?>) value, out, start, depth);
+        } else if (value instanceof Optional) {
+            Optional<?> optional = (Optional<?>) value;
+            if (optional.isPresent()) {
+                out.append("Optional[");
+                appendValue(optional.get(), out, start, depth);
+                out.append(']');
+            } else {
+                out.append("Optional.empty");
+            }
+        } else {
+            out.append(value);
+        }
+    }
+
+    private void appendProxy(MapProxy handler, Object proxy, StringBuilder out, int start, int depth) {
+        String cached = isUnlimited() ? handler.getCachedFullString() : null;
+        if (cached != null) {
+            out.append(cached);
+            return;
+        }
+        if (depth >= maxDepth) {
+            out.append("PROXY{").append(TRUNCATED).append('}');
+            return;
+        }
+        String custom = handler.invokeCustomToString(proxy);
+        if (custom != null) {
+            out.append(custom);
+            return;
+        }
+        out.append("PROXY{");
+        boolean first = true;
+        for (String key : handler.getToStringKeys()) {
+            if (!handler.hasStoredValue(key)) {
+                continue;
+            }
+            if (isFull(out, start)) {
+                break;
+            }
+            if (!first) {
+                out.append(", ");
+            }
+            first = false;
+            out.append(key).append('=');
+            appendValue(handler.getToStringValue(key), out, start, depth + 1);
+        }
+        out.append('}');
+    }
+
+    private void appendCollection(Collection<?> collection, StringBuilder out, int start, int depth) {
+        if (depth >= maxDepth && !collection.isEmpty()) {
+            out.append('[').append(TRUNCATED).append(']');
+            return;
+        }
+        out.append('[');
+        int count = 0;
+        for (Iterator<?> iterator = collection.iterator(); iterator.hasNext() && !isFull(out, start); count++) {
+            if (count > 0) {
+                out.append(", ");
+            }
+            if (count == maxElements) {
+                appendOmitted(collection.size() - count, out);
+                break;
+            }
+            Object element = iterator.next();
+            appendValue(element == collection ? "(this Collection)" : element, out, start, depth + 1);
+        }
+        out.append(']');
+    }
+
+    private void appendMap(Map<?, ?> map, StringBuilder out, int start, int depth) {
+        if (depth >= maxDepth && !map.isEmpty()) {
+            out.append('{').append(TRUNCATED).append('}');
+            return;
+        }
+        out.append('{');
+        int count = 0;
+        for (Iterator<? extends Map.Entry<?, ?>> iterator = map.entrySet().iterator(); iterator.hasNext() && !isFull(out, start); count++) {
+            if (count > 0) {
+                out.append(", ");
+            }
+            if (count == maxElements) {
+                appendOmitted(map.size() - count, out);
+                break;
+            }
+            Map.Entry<?, ?> entry = iterator.next();
+            appendValue(entry.getKey() == map ? "(this Map)" : entry.getKey(), out, start, depth + 1);
+            out.append('=');
+            appendValue(entry.getValue() == map ? "(this Map)" : entry.getValue(), out, start, depth + 1);
+        }
+        out.append('}');
+    }
+
+    private static void appendOmitted(int omitted, StringBuilder out) {
+        out.append(TRUNCATED).append(omitted).append(" more");
+    }
+
+    private boolean isFull(StringBuilder out, int start) {
+        return out.length() - start > maxLength;
+    }
+
+    private static int checkLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("The limit has to be at least 1, got " + limit);
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,171 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.function.ToIntFunction;
+
+/**
+ * Read-only proxies over a memory mapped binary file. The records are not deserialized, every attribute
+ * is decoded from the mapped buffer when it is accessed, so the data is kept off-heap.
+ *
+ * The file contains the layout of the records (map keys and slot types), the fixed size records and a
+ * string table. Only scalar attributes (primitives and their wrappers, {@link String}, enums,
+ * {@link java.math.BigDecimal}, {@link java.time.LocalDate}, {@link java.time.LocalDateTime} and
+ * {@link java.util.Date}) can be stored.
+ *
+ * The file is mapped with a single {@link MappedByteBuffer}, so its size is limited to 2GB.
+ */
+public final class MappedProxyFile<T> extends AbstractList<T> implements RandomAccess, Closeable {
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Class<T> clazz;
+    private final MapProxyParams params;
+    private final FileChannel channel;
+    private final MappedRecordLayout layout;
+    private final ByteBuffer buffer;
+
+    private MappedProxyFile(Class<T> clazz, MapProxyParams params, FileChannel channel, ByteBuffer buffer) {
+        this.clazz = clazz;
+        this.params = params;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.layout = MappedRecordLayout.read(clazz, buffer);
+    }
+
+    public static <T> MappedProxyFile<T> open(Class<T> clazz, Path path) {
+        return open(clazz, path, new MapProxyParams());
+    }
+
+    public static <T> MappedProxyFile<T> open(Class<T> clazz, Path path, MapProxyParams params) {
+        MapProxyParams readParams = MapProxy.toReadOnlyParams(params);
+
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedProxyFile<>(clazz, readParams, channel, buffer);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new UncheckedIOException("Could not open " + path, e);
+        } catch (RuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    public static <T> void write(Class<T> clazz, Iterable<? extends T> proxies, Path path) {
+        MappedRecordLayout layout = MappedRecordLayout.of(clazz);
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        Map<String, Integer> stringOffsets = new HashMap<>();
+        ToIntFunction<String> stringTable = s -> stringOffsets.computeIfAbsent(s, k -> {
+            byte[] bytes = k.getBytes(StandardCharsets.UTF_8);
+            int offset = strings.size();
+            strings.write(bytes, 0, bytes.length);
+            return offset;
+        });
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE));
+            int recordCountPosition = layout.writeHeader(out);
+
+            ByteBuffer record = ByteBuffer.allocate(layout.getRecordSize());
+            int recordCount = 0;
+            for (T proxy : proxies) {
+                if (!(proxy instanceof MapHolder)) {
+                    throw new IllegalArgumentException(String.format("Only proxies can be written to mapped file, got %s", proxy));
+                }
+                Map<String, Object> values = ((MapHolder) proxy).$internalMap();
+                MapProxy handler = MapProxy.getHandler(proxy);
+                layout.checkUnsupported(values);
+                Arrays.fill(record.array(), (byte) 0);
+                for (int slot = 0; slot < layout.getSlotCount(); slot++) {
+                    String key = layout.getKey(slot);
+                    Object value = handler != null ? handler.getConvertedValue(key) : values.get(key);
+                    if (value instanceof Optional) {
+                        value = ((Optional) value).orElse(null);
+                    }
+                    if (value != null) {
+                        layout.encode(record, slot, value, stringTable);
+                    }
+                }
+                out.write(record.array());
+                recordCount++;
+            }
+            strings.writeTo(out);
+            out.flush();
+
+            ByteBuffer count = ByteBuffer.allocate(Integer.BYTES);
+            count.putInt(0, recordCount);
+            channel.write(count, recordCountPosition);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + path, e);
+        }
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= layout.getRecordCount()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + layout.getRecordCount());
+        }
+        return MapProxy.newStorageInstance(clazz, params, new MappedRecordMap(layout, buffer, layout.getRecordOffset(index)));
+    }
+
+    @Override
+    public int size() {
+        return layout.getRecordCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // This block intentionally left blank.
+            }
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import hu.blackbelt.structured.map.proxy.MapProxy.AttributeInfo;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.ToIntFunction;
+
+import static java.lang.String.format;
+
+/**
+ * Fixed size record layout of {@link MappedProxyFile}. Every record starts with a presence bitmap
+ * followed by the slots of the attributes. Variable length values and the names of the enum constants
+ * are stored in the string table at the end of the file, the slot contains the offset and the length of
+ * the value.
+ */
+final class MappedRecordLayout {
+
+    private static final int MAGIC = 0x534D5046;
+    private static final int VERSION = 2;
+
+    enum SlotType {
+        BOOLEAN(1, 1),
+        BYTE(2, 1),
+        SHORT(3, 2),
+        CHAR(4, 2),
+        INT(5, 4),
+        LONG(6, 8),
+        FLOAT(7, 4),
+        DOUBLE(8, 8),
+        STRING(9, 8),
+        ENUM(10, 8),
+        BIG_DECIMAL(11, 8),
+        LOCAL_DATE(12, 8),
+        LOCAL_DATE_TIME(13, 12),
+        DATE(14, 8);
+
+        final int code;
+        final int size;
+
+        SlotType(int code, int size) {
+            this.code = code;
+            this.size = size;
+        }
+
+        static SlotType ofCode(int code) {
+            for (SlotType slotType : values()) {
+                if (slotType.code == code) {
+                    return slotType;
+                }
+            }
+            throw new IllegalArgumentException(format("Unknown slot type code: %d", code));
+        }
+
+        static Optional<SlotType> of(Class type) {
+            if (type == boolean.class || type == Boolean.class) {
+                return Optional.of(BOOLEAN);
+            } else if (type == byte.class || type == Byte.class) {
+                return Optional.of(BYTE);
+            } else if (type == short.class || type == Short.class) {
+                return Optional.of(SHORT);
+            } else if (type == char.class || type == Character.class) {
+                return Optional.of(CHAR);
+            } else if (type == int.class || type == Integer.class) {
+                return Optional.of(INT);
+            } else if (type == long.class || type == Long.class) {
+                return Optional.of(LONG);
+            } else if (type == float.class || type == Float.class) {
+                return Optional.of(FLOAT);
+            } else if (type == double.class || type == Double.class) {
+                return Optional.of(DOUBLE);
+            } else if (type.isEnum()) {
+                return Optional.of(ENUM);
+            } else if (type == BigDecimal.class) {
+                return Optional.of(BIG_DECIMAL);
+            } else if (type == LocalDate.class) {
+                return Optional.of(LOCAL_DATE);
+            } else if (type == LocalDateTime.class) {
+                return Optional.of(LOCAL_DATE_TIME);
+            } else if (type == Date.class) {
+                return Optional.of(DATE);
+            } else if (type.isAssignableFrom(String.class)) {
+                return Optional.of(STRING);
+            }
+            return Optional.empty();
+        }
+    }
+
+    private final Class clazz;
+    private final String[] keys;
+    private final SlotType[] types;
+    private final Class[] valueTypes;
+    private final int[] offsets;
+    private final Map<String, Integer> slotIndex = new HashMap<>();
+    private final List<String> unsupportedKeys;
+    private final int bitmapSize;
+    private final int recordSize;
+
+    private int recordCount;
+    private int recordsOffset;
+    private int stringTableOffset;
+
+    private MappedRecordLayout(Class clazz, List<String> keys, List<SlotType> types, List<String> unsupportedKeys) {
+        Map<String, AttributeInfo> storageInfo = MapProxy.getStorageInfo(clazz);
+
+        this.clazz = clazz;
+        this.keys = keys.toArray(new String[0]);
+        this.types = types.toArray(new SlotType[0]);
+        this.valueTypes = new Class[this.keys.length];
+        this.offsets = new int[this.keys.length];
+        this.unsupportedKeys = unsupportedKeys;
+        this.bitmapSize = (this.keys.length + 7) / 8;
+
+        int offset = bitmapSize;
+        for (int i = 0; i < this.keys.length; i++) {
+            slotIndex.put(this.keys[i], i);
+            offsets[i] = offset;
+            offset += this.types[i].size;
+            AttributeInfo attributeInfo = storageInfo.get(this.keys[i]);
+            if (attributeInfo != null) {
+                valueTypes[i] = valueType(attributeInfo);
+            }
+        }
+        this.recordSize = offset;
+    }
+
+    static MappedRecordLayout of(Class clazz) {
+        List<String> keys = new ArrayList<>();
+        List<SlotType> types = new ArrayList<>();
+        List<String> unsupportedKeys = new ArrayList<>();
+        MapProxy.getStorageInfo(clazz).forEach((mapKey, attributeInfo) -> {
+            Optional<SlotType> slotType = SlotType.of(valueType(attributeInfo));
+            if (slotType.isPresent()) {
+                keys.add(mapKey);
+                types.add(slotType.get());
+            } else {
+                unsupportedKeys.add(mapKey);
+            }
+        });
+        return new MappedRecordLayout(clazz, keys, types, unsupportedKeys);
+    }
+
+    static MappedRecordLayout read(Class clazz, ByteBuffer buffer) {
+        int position = 0;
+        if (buffer.limit() < 3 * Integer.BYTES || buffer.getInt(position) != MAGIC) {
+            throw new IllegalArgumentException("Not a mapped proxy file");
+        }
+        position += Integer.BYTES;
+        int version = buffer.getInt(position);
+        if (version != VERSION) {
+            throw new IllegalArgumentException(format("Unsupported mapped proxy file version: %d", version));
+        }
+        position += Integer.BYTES;
+        int slotCount = buffer.getInt(position);
+        position += Integer.BYTES;
+
+        Map<String, AttributeInfo> storageInfo = MapProxy.getStorageInfo(clazz);
+        List<String> keys = new ArrayList<>();
+        List<SlotType> types = new ArrayList<>();
+        for (int i = 0; i < slotCount; i++) {
+            int keyLength = Short.toUnsignedInt(buffer.getShort(position));
+            position += Short.BYTES;
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(position, keyBytes);
+            position += keyLength;
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            SlotType slotType = SlotType.ofCode(buffer.get(position));
+            position += Byte.BYTES;
+
+            AttributeInfo attributeInfo = storageInfo.get(key);
+            if (attributeInfo != null && !SlotType.of(valueType(attributeInfo)).equals(Optional.of(slotType))) {
+                throw new IllegalArgumentException(format("The attribute %s in %s is stored as %s in the mapped file, which is not compatible with %s",
+                        key, clazz.getName(), slotType, valueType(attributeInfo).getName()));
+            }
+            keys.add(key);
+            types.add(slotType);
+        }
+
+        MappedRecordLayout layout = new MappedRecordLayout(clazz, keys, types, new ArrayList<>());
+        int recordSize = buffer.getInt(position);
+        position += Integer.BYTES;
+        if (recordSize != layout.recordSize) {
+            throw new IllegalArgumentException(format("Invalid record size in mapped file: %d, expected: %d", recordSize, layout.recordSize));
+        }
+        layout.recordCount = buffer.getInt(position);
+        position += Integer.BYTES;
+        layout.recordsOffset = position;
+        layout.stringTableOffset = Math.addExact(position, Math.multiplyExact(recordSize, layout.recordCount));
+        if (layout.stringTableOffset > buffer.limit()) {
+            throw new IllegalArgumentException("Truncated mapped proxy file");
+        }
+        return layout;
+    }
+
+    int writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            byte[] keyBytes = keys[i].getBytes(StandardCharsets.UTF_8);
+            out.writeShort(keyBytes.length);
+            out.write(keyBytes);
+            out.writeByte(types[i].code);
+        }
+        out.writeInt(recordSize);
+        int recordCountPosition = out.size();
+        out.writeInt(0);
+        return recordCountPosition;
+    }
+
+    void checkUnsupported(Map<String, ?> values) {
+        for (String key : unsupportedKeys) {
+            Object value = values.get(key);
+            if (value instanceof Optional) {
+                value = ((Optional) value).orElse(null);
+            }
+            if (value != null) {
+                throw new IllegalArgumentException(format("The attribute %s in %s cannot be stored in mapped file, only scalar values are supported",
+                        key, clazz.getName()));
+            }
+        }
+    }
+
+    void encode(ByteBuffer record, int slot, Object value, ToIntFunction<String> stringTable) {
+        int offset = offsets[slot];
+        try {
+            switch (types[slot]) {
+                case BOOLEAN:
+                    record.put(offset, (byte) ((Boolean) value ? 1 : 0));
+                    break;
+                case BYTE:
+                    record.put(offset, ((Number) value).byteValue());
+                    break;
+                case SHORT:
+                    record.putShort(offset, ((Number) value).shortValue());
+                    break;
+                case CHAR:
+                    record.putChar(offset, (Character) value);
+                    break;
+                case INT:
+                    record.putInt(offset, ((Number) value).intValue());
+                    break;
+                case LONG:
+                    record.putLong(offset, ((Number) value).longValue());
+                    break;
+                case FLOAT:
+                    record.putFloat(offset, ((Number) value).floatValue());
+                    break;
+                case DOUBLE:
+                    record.putDouble(offset, ((Number) value).doubleValue());
+                    break;
+                case STRING:
+                    putString(record, offset, (String) value, stringTable);
+                    break;
+                case ENUM:
+                    putString(record, offset, ((Enum) valueTypes[slot].cast(value)).name(), stringTable);
+                    break;
+                case BIG_DECIMAL:
+                    putString(record, offset, ((BigDecimal) value).toString(), stringTable);
+                    break;
+                case LOCAL_DATE:
+                    record.putLong(offset, ((LocalDate) value).toEpochDay());
+                    break;
+                case LOCAL_DATE_TIME:
+                    record.putLong(offset, ((LocalDateTime) value).toEpochSecond(ZoneOffset.UTC));
+                    record.putInt(offset + Long.BYTES, ((LocalDateTime) value).getNano());
+                    break;
+                case DATE:
+                    record.putLong(offset, ((Date) value).getTime());
+                    break;
+                default:
+                    throw new IllegalStateException("Unhandled slot type: " + types[slot]);
+            }
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException(format("Could not store %s of %s as %s in %s.%s",
+                    value, value.getClass().getName(), types[slot], clazz.getName(), keys[slot]), e);
+        }
+        record.put(slot / 8, (byte) (record.get(slot / 8) | (1 << (slot % 8))));
+    }
+
+    boolean isPresent(ByteBuffer buffer, int recordOffset, int slot) {
+        return (buffer.get(recordOffset + slot / 8) & (1 << (slot % 8))) != 0;
+    }
+
+    Object decode(ByteBuffer buffer, int recordOffset, int slot) {
+        int offset = recordOffset + offsets[slot];
+        switch (types[slot]) {
+            case BOOLEAN:
+                return buffer.get(offset) != 0;
+            case BYTE:
+                return buffer.get(offset);
+            case SHORT:
+                return buffer.getShort(offset);
+            case CHAR:
+                return buffer.getChar(offset);
+            case INT:
+                return buffer.getInt(offset);
+            case LONG:
+                return buffer.getLong(offset);
+            case FLOAT:
+                return buffer.getFloat(offset);
+            case DOUBLE:
+                return buffer.getDouble(offset);
+            case STRING:
+                return getString(buffer, offset);
+            case ENUM:
+                return valueTypes[slot] != null ? toEnum(slot, getString(buffer, offset)) : getString(buffer, offset);
+            case BIG_DECIMAL:
+                return new BigDecimal(getString(buffer, offset));
+            case LOCAL_DATE:
+                return LocalDate.ofEpochDay(buffer.getLong(offset));
+            case LOCAL_DATE_TIME:
+                return LocalDateTime.ofEpochSecond(buffer.getLong(offset), buffer.getInt(offset + Long.BYTES), ZoneOffset.UTC);
+            case DATE:
+                return new Date(buffer.getLong(offset));
+            default:
+                throw new IllegalStateException("Unhandled slot type: " + types[slot]);
+        }
+    }
+
+    private void putString(ByteBuffer record, int offset, String value, ToIntFunction<String> stringTable) {
+        record.putInt(offset, stringTable.applyAsInt(value));
+        record.putInt(offset + Integer.BYTES, value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private String getString(ByteBuffer buffer, int offset) {
+        byte[] bytes = new byte[buffer.getInt(offset + Integer.BYTES)];
+        buffer.get(stringTableOffset + buffer.getInt(offset), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Enum toEnum(int slot, String name) {
+        try {
+            return Enum.valueOf(valueTypes[slot], name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(format("The constant %s stored in the mapped file for %s.%s does not exist in %s",
+                    name, clazz.getName(), keys[slot], valueTypes[slot].getName()), e);
+        }
+    }
+
+    private static Class valueType(AttributeInfo attributeInfo) {
+        if (Optional.class.isAssignableFrom(attributeInfo.getPropertyType()) && attributeInfo.getParameterType() != null) {
+            return MapProxy.getRawType(attributeInfo.getParameterType(), 0);
+        }
+        return attributeInfo.getPropertyType();
+    }
+
+    int slotOf(Object key) {
+        Integer slot = slotIndex.get(key);
+        return slot != null ? slot : -1;
+    }
+
+    String getKey(int slot) {
+        return keys[slot];
+    }
+
+    int getSlotCount() {
+        return keys.length;
+    }
+
+    int getRecordSize() {
+        return recordSize;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    int getRecordOffset(int index) {
+        return recordsOffset + index * recordSize;
+    }
+}
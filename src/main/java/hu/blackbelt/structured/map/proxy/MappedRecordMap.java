@@ -0,0 +1,106 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only map view of one record of a {@link MappedProxyFile}. The values are decoded on every access.
+ */
+final class MappedRecordMap extends AbstractMap<String, Object> {
+
+    private final MappedRecordLayout layout;
+    private final ByteBuffer buffer;
+    private final int recordOffset;
+
+    MappedRecordMap(MappedRecordLayout layout, ByteBuffer buffer, int recordOffset) {
+        this.layout = layout;
+        this.buffer = buffer;
+        this.recordOffset = recordOffset;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = layout.slotOf(key);
+        if (slot < 0 || !layout.isPresent(buffer, recordOffset, slot)) {
+            return null;
+        }
+        return layout.decode(buffer, recordOffset, slot);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = layout.slotOf(key);
+        return slot >= 0 && layout.isPresent(buffer, recordOffset, slot);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private int slot = nextPresent(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < layout.getSlotCount();
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, Object> entry = new SimpleImmutableEntry<>(layout.getKey(slot), layout.decode(buffer, recordOffset, slot));
+                        slot = nextPresent(slot + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (int slot = 0; slot < layout.getSlotCount(); slot++) {
+                    if (layout.isPresent(buffer, recordOffset, slot)) {
+                        size++;
+                    }
+                }
+                return size;
+            }
+        };
+    }
+
+    private int nextPresent(int from) {
+        int slot = from;
+        while (slot < layout.getSlotCount() && !layout.isPresent(buffer, recordOffset, slot)) {
+            slot++;
+        }
+        return slot;
+    }
+}
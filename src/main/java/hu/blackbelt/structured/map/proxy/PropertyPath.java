@@ -0,0 +1,201 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.primitives.Primitives;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import hu.blackbelt.structured.map.proxy.MapProxy.AttributeInfo;
+import hu.blackbelt.structured.map.proxy.util.ReflectionUtil;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static hu.blackbelt.structured.map.proxy.MapProxy.DEFULT_STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND;
+import static hu.blackbelt.structured.map.proxy.MapProxy.STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND;
+
+/**
+ * A dotted property path (for example <code>singleUserDetail.id</code>) resolved once against a type. The getters
+ * of the segments are compiled into MethodHandles, the attributes of proxies are read from their storage directly.
+ * The path is evaluated to null when a segment is null, {@link Optional} values are unwrapped.
+ *
+ * The segments are resolved against the declared types, so the path can be used on instances of the given type
+ * and its subtypes only.
+ */
+public final class PropertyPath {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static LoadingCache<PathKey, PropertyPath> pathCache = CacheBuilder
+            .newBuilder()
+            .expireAfterAccess(Long.parseLong(System.getProperty(STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND, DEFULT_STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND)), TimeUnit.SECONDS)
+            .build(new CacheLoader<PathKey, PropertyPath>() {
+                @Override
+                public PropertyPath load(PathKey key) {
+                    return new PropertyPath(key.clazz, key.path);
+                }
+            });
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static final class PathKey {
+        private final Class clazz;
+        private final String path;
+    }
+
+    private final String path;
+    private final Segment[] segments;
+    private final Class<?> type;
+
+    private PropertyPath(Class<?> clazz, String path) {
+        this.path = path;
+        List<Segment> resolved = new ArrayList<>();
+        Class<?> current = clazz;
+        for (String name : Splitter.on('.').split(path)) {
+            Segment segment = new Segment(current, name);
+            resolved.add(segment);
+            current = segment.valueType;
+        }
+        this.segments = resolved.toArray(new Segment[0]);
+        this.type = current;
+    }
+
+    public static PropertyPath compile(Class<?> clazz, String path) {
+        if (clazz == null || path == null || path.isEmpty()) {
+            throw new IllegalArgumentException("Class and path are mandatory");
+        }
+        try {
+            return pathCache.getUnchecked(new PathKey(clazz, path));
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public Object get(Object subject) {
+        Object value = subject;
+        for (Segment segment : segments) {
+            if (value == null) {
+                return null;
+            }
+            value = segment.read(value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the type of the last segment, the type argument of {@link Optional} values.
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    private static final class Segment {
+        private final Class<?> declaringClass;
+        private final Method method;
+        private final MethodHandle getter;
+        private final Class<?> valueType;
+        private final boolean optional;
+        private final String mapKey;
+
+        private Segment(Class<?> declaringClass, String name) {
+            this.declaringClass = declaringClass;
+            this.method = ReflectionUtil.findGetter(declaringClass, name);
+            this.getter = toHandle(method);
+
+            Class<?> returnType = method.getReturnType();
+            optional = Optional.class.equals(returnType);
+            if (optional) {
+                Type genericType = method.getGenericReturnType();
+                returnType = genericType instanceof ParameterizedType
+                        ? MapProxy.getRawType((ParameterizedType) genericType, 0)
+                        : Object.class;
+            }
+            valueType = Primitives.wrap(returnType);
+
+            AttributeInfo attributeInfo = declaringClass.isInterface() ? MapProxy.getTypeInfo(declaringClass).get(name) : null;
+            mapKey = attributeInfo != null && !attributeInfo.isComposite() && !Collection.class.isAssignableFrom(valueType)
+                    ? attributeInfo.getMapKey()
+                    : null;
+        }
+
+        private Object read(Object target) {
+            if (mapKey != null) {
+                MapProxy handler = MapProxy.getHandler(target);
+                Map<String, Object> storage = handler != null && handler.clazz == declaringClass ? handler.getConvertedStorage() : null;
+                if (storage != null) {
+                    Object value = storage.get(mapKey);
+                    if (value instanceof Optional) {
+                        return ((Optional) value).orElse(null);
+                    } else if (value == null || valueType.isInstance(value)) {
+                        return value;
+                    }
+                }
+            }
+            Object value;
+            try {
+                value = (Object) getter.invokeExact(target);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalArgumentException(String.format("Can not get field[%s] value on objectClass[%s]", method.getName(), target.getClass()), e);
+            }
+            return optional && value != null ? ((Optional) value).orElse(null) : value;
+        }
+
+        private static MethodHandle toHandle(Method method) {
+            try {
+                MethodHandle handle;
+                try {
+                    handle = MethodHandles.lookup().unreflect(method);
+                } catch (IllegalAccessException e) {
+                    method.setAccessible(true);
+                    handle = MethodHandles.lookup().unreflect(method);
+                }
+                return handle.asType(GETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(String.format("Could not access getter %s of %s", method.getName(), method.getDeclaringClass().getName()), e);
+            }
+        }
+    }
+}
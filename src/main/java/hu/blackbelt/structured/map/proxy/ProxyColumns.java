@@ -0,0 +1,782 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import hu.blackbelt.structured.map.proxy.MapProxy.AttributeInfo;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import static java.lang.String.format;
+
+/**
+ * Columnar list of proxies of one interface. Every attribute is stored in its own column, primitive
+ * and wrapper typed attributes in primitive arrays, so a large collection does not hold a handler and
+ * maps for every element. The elements are flyweight proxies over a row of the columns, they are
+ * created on access and they work like cursors: they read and write the row at their position, so
+ * {@link #set(int, Object)} changes the values seen through them. After a structural change which moves
+ * the rows (an insert before the last row, a remove or clear), the elements returned before throw
+ * {@link ConcurrentModificationException}. An element has to be copied, for example by
+ * {@code MapProxy.builder}, to keep it after such a change.
+ *
+ * It can be used as the value of a typed collection attribute, it is kept as is by mutable proxies and copied
+ * into frozen columns by immutable ones. Frozen columns can not be modified, their elements are immutable.
+ */
+public final class ProxyColumns<T> extends AbstractList<T> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Class<T> clazz;
+    private MapProxyParams params;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private final Map<String, Column> columnsByAttribute = new LinkedHashMap<>();
+    private int size;
+    private int capacity = INITIAL_CAPACITY;
+    /**
+     * Incremented when the rows are moved, the elements created before refer to other rows afterwards.
+     */
+    private int rowVersion;
+    private volatile boolean frozen;
+
+    private ProxyColumns(Class<T> clazz, MapProxyParams params) {
+        this.clazz = clazz;
+        this.params = params;
+        MapProxy.getStorageInfo(clazz).forEach((mapKey, attributeInfo) -> columns.put(mapKey, Column.of(attributeInfo, capacity)));
+        indexAttributes();
+    }
+
+    private ProxyColumns(ProxyColumns<T> source, MapProxyParams params) {
+        this.clazz = source.clazz;
+        this.params = params;
+        this.size = source.size;
+        this.capacity = Math.max(source.size, 1);
+        source.columns.forEach((mapKey, column) -> columns.put(mapKey, column.copy(capacity)));
+        indexAttributes();
+    }
+
+    private void indexAttributes() {
+        MapProxy.getTypeInfo(clazz).forEach((attrName, attributeInfo) -> {
+            if (columns.containsKey(attributeInfo.getMapKey())) {
+                columnsByAttribute.put(attrName, columns.get(attributeInfo.getMapKey()));
+            }
+        });
+    }
+
+    public static <T> ProxyColumns<T> of(Class<T> clazz) {
+        return new ProxyColumns<>(clazz, new MapProxyParams());
+    }
+
+    public static <T> ProxyColumns<T> of(Class<T> clazz, MapProxyParams params) {
+        MapProxyParams columnParams = new MapProxyParams();
+        columnParams.setImmutable(params.isImmutable());
+        columnParams.setNullSafeCollection(params.isNullSafeCollection());
+        columnParams.setEnumMappingMethod(params.getEnumMappingMethod());
+        columnParams.setMapNullToOptionalAbsent(params.isMapNullToOptionalAbsent());
+        return new ProxyColumns<>(clazz, columnParams);
+    }
+
+    public Class<T> getElementType() {
+        return clazz;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Makes the columns read-only in place, the proxies and collections stored in the columns are frozen too.
+     * The elements returned afterwards are immutable, the writes through the elements returned before throw
+     * {@link IllegalStateException}.
+     */
+    void freeze(MapProxyInterner interner) {
+        if (!frozen) {
+            params = MapProxy.toReadOnlyParams(params);
+            replaceObjectValues(value -> MapProxy.freezeValue(value, interner));
+            frozen = true;
+        }
+    }
+
+    /**
+     * Returns frozen columns with the values of these columns, these columns if they are frozen already.
+     */
+    ProxyColumns<T> toFrozen() {
+        if (frozen) {
+            return this;
+        }
+        ProxyColumns<T> copy = new ProxyColumns<>(this, params);
+        copy.replaceObjectValues(MapProxy::copyValue);
+        copy.freeze(null);
+        return copy;
+    }
+
+    private void replaceObjectValues(UnaryOperator<Object> function) {
+        for (Column column : columns.values()) {
+            if (column instanceof ObjectColumn) {
+                Object[] values = ((ObjectColumn) column).values;
+                for (int row = 0; row < size; row++) {
+                    if (values[row] != null) {
+                        values[row] = function.apply(values[row]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public T get(int index) {
+        checkIndex(index, size);
+        return MapProxy.newStorageInstance(clazz, params, new RowMap(index));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public T set(int index, T element) {
+        checkModifiable();
+        checkIndex(index, size);
+        T previous = detached(index);
+        write(index, element);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, T element) {
+        checkModifiable();
+        checkIndex(index, size + 1);
+        ensureCapacity(size + 1);
+        if (index < size) {
+            for (Column column : columns.values()) {
+                column.shift(index, index + 1, size - index);
+            }
+            rowVersion++;
+        }
+        size++;
+        write(index, element);
+        modCount++;
+    }
+
+    @Override
+    public T remove(int index) {
+        checkModifiable();
+        checkIndex(index, size);
+        T removed = detached(index);
+        for (Column column : columns.values()) {
+            column.shift(index + 1, index, size - index - 1);
+            column.clear(size - 1);
+        }
+        size--;
+        rowVersion++;
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        checkModifiable();
+        for (Column column : columns.values()) {
+            column.clearAll(size);
+        }
+        size = 0;
+        rowVersion++;
+        modCount++;
+    }
+
+    public long[] longColumn(String attribute) {
+        Column column = column(attribute);
+        long[] ret = new long[size];
+        if (column instanceof LongColumn) {
+            System.arraycopy(((LongColumn) column).values, 0, ret, 0, size);
+        } else if (column instanceof IntColumn) {
+            int[] values = ((IntColumn) column).values;
+            for (int i = 0; i < size; i++) {
+                ret[i] = values[i];
+            }
+        } else {
+            throw new IllegalArgumentException(format("The attribute %s in %s is not an integral attribute", attribute, clazz.getName()));
+        }
+        return ret;
+    }
+
+    public int[] intColumn(String attribute) {
+        Column column = column(attribute);
+        if (!(column instanceof IntColumn)) {
+            throw new IllegalArgumentException(format("The attribute %s in %s is not an int attribute", attribute, clazz.getName()));
+        }
+        return Arrays.copyOf(((IntColumn) column).values, size);
+    }
+
+    public double[] doubleColumn(String attribute) {
+        Column column = column(attribute);
+        double[] ret = new double[size];
+        if (column instanceof DoubleColumn) {
+            System.arraycopy(((DoubleColumn) column).values, 0, ret, 0, size);
+        } else if (column instanceof LongColumn) {
+            long[] values = ((LongColumn) column).values;
+            for (int i = 0; i < size; i++) {
+                ret[i] = values[i];
+            }
+        } else if (column instanceof IntColumn) {
+            int[] values = ((IntColumn) column).values;
+            for (int i = 0; i < size; i++) {
+                ret[i] = values[i];
+            }
+        } else {
+            throw new IllegalArgumentException(format("The attribute %s in %s is not a numeric attribute", attribute, clazz.getName()));
+        }
+        return ret;
+    }
+
+    public boolean[] booleanColumn(String attribute) {
+        Column column = column(attribute);
+        if (!(column instanceof BooleanColumn)) {
+            throw new IllegalArgumentException(format("The attribute %s in %s is not a boolean attribute", attribute, clazz.getName()));
+        }
+        boolean[] ret = new boolean[size];
+        BitSet values = ((BooleanColumn) column).values;
+        for (int i = values.nextSetBit(0); i >= 0 && i < size; i = values.nextSetBit(i + 1)) {
+            ret[i] = true;
+        }
+        return ret;
+    }
+
+    public <V> V[] column(String attribute, Class<V> type) {
+        Column column = column(attribute);
+        V[] ret = (V[]) java.lang.reflect.Array.newInstance(type, size);
+        for (int i = 0; i < size; i++) {
+            ret[i] = type.cast(column.get(i));
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the rows where the value of the given attribute is set and not null.
+     */
+    public BitSet presentMask(String attribute) {
+        Column column = column(attribute);
+        BitSet ret = (BitSet) column.present.clone();
+        if (column instanceof PrimitiveColumn) {
+            ret.andNot(((PrimitiveColumn) column).nulls);
+        } else {
+            for (int i = ret.nextSetBit(0); i >= 0; i = ret.nextSetBit(i + 1)) {
+                if (column.get(i) == null) {
+                    ret.clear(i);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private Column column(String attribute) {
+        Column column = columnsByAttribute.get(attribute);
+        if (column == null) {
+            column = columns.get(attribute);
+        }
+        if (column == null) {
+            throw new IllegalArgumentException(format("No attribute %s found in %s", attribute, clazz.getName()));
+        }
+        return column;
+    }
+
+    private T detached(int row) {
+        return MapProxy.newStorageInstance(clazz, params, new LinkedHashMap<>(new RowMap(row)));
+    }
+
+    private void write(int row, T element) {
+        if (element == null) {
+            throw new NullPointerException("Null element cannot be stored in columns");
+        }
+        if (element instanceof MapHolder) {
+            Map<String, Object> values = ((MapHolder) element).$internalMap();
+            MapProxy handler = MapProxy.getHandler(element);
+            columns.forEach((mapKey, column) -> {
+                if (values.containsKey(mapKey)) {
+                    column.set(row, unwrap(handler != null ? handler.getConvertedValue(mapKey) : values.get(mapKey)));
+                } else {
+                    column.clear(row);
+                }
+            });
+        } else if (clazz.isInstance(element)) {
+            MapProxy.getTypeInfo(clazz).forEach((attrName, attributeInfo) -> {
+                Column column = columnsByAttribute.get(attrName);
+                PropertyDescriptor propertyDescriptor = attributeInfo.getPropertyDescriptor();
+                if (column != null && propertyDescriptor != null && propertyDescriptor.getReadMethod() != null) {
+                    try {
+                        column.set(row, unwrap(propertyDescriptor.getReadMethod().invoke(element)));
+                    } catch (IllegalAccessException | InvocationTargetException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        } else {
+            throw new ClassCastException(format("%s is not an instance of %s", element.getClass().getName(), clazz.getName()));
+        }
+    }
+
+    private static Object unwrap(Object value) {
+        if (value instanceof Optional) {
+            return ((Optional) value).orElse(null);
+        }
+        return value;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > capacity) {
+            capacity = Math.max(minCapacity, capacity + (capacity >> 1));
+            for (Column column : columns.values()) {
+                column.grow(capacity);
+            }
+        }
+    }
+
+    private void checkModifiable() {
+        if (frozen) {
+            throw new UnsupportedOperationException(format("The columns of %s are frozen", clazz.getName()));
+        }
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private final class RowMap extends AbstractMap<String, Object> {
+        private final int row;
+        private final int version;
+
+        private RowMap(int row) {
+            this.row = row;
+            this.version = rowVersion;
+        }
+
+        private void checkRow() {
+            if (version != rowVersion) {
+                throw new ConcurrentModificationException(format("The row %d of the columns of %s has been moved", row, clazz.getName()));
+            }
+        }
+
+        private void checkWritable() {
+            checkRow();
+            if (frozen) {
+                throw new IllegalStateException(format("The columns of %s are frozen", clazz.getName()));
+            }
+        }
+
+        @Override
+        public Object get(Object key) {
+            checkRow();
+            Column column = columns.get(key);
+            return column != null && column.present.get(row) ? column.get(row) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            checkRow();
+            Column column = columns.get(key);
+            return column != null && column.present.get(row);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            checkWritable();
+            Column column = columns.get(key);
+            if (column == null) {
+                throw new IllegalArgumentException(format("No attribute %s found in %s", key, clazz.getName()));
+            }
+            Object previous = get(key);
+            column.set(row, unwrap(value));
+            return previous;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            checkWritable();
+            Column column = columns.get(key);
+            Object previous = get(key);
+            if (column != null) {
+                column.clear(row);
+            }
+            return previous;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            checkRow();
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    Iterator<Map.Entry<String, Column>> columnIterator = columns.entrySet().iterator();
+                    return new Iterator<>() {
+                        private Map.Entry<String, Column> next = advance();
+
+                        private Map.Entry<String, Column> advance() {
+                            while (columnIterator.hasNext()) {
+                                Map.Entry<String, Column> entry = columnIterator.next();
+                                if (entry.getValue().present.get(row)) {
+                                    return entry;
+                                }
+                            }
+                            return null;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next != null;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next == null) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, Object> entry = new SimpleImmutableEntry<>(next.getKey(), next.getValue().get(row));
+                            next = advance();
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    int ret = 0;
+                    for (Column column : columns.values()) {
+                        if (column.present.get(row)) {
+                            ret++;
+                        }
+                    }
+                    return ret;
+                }
+            };
+        }
+    }
+
+    private abstract static class Column {
+        final BitSet present = new BitSet();
+
+        static Column of(AttributeInfo attributeInfo, int capacity) {
+            Class type = attributeInfo.getPropertyType();
+            if (Optional.class.isAssignableFrom(type) && attributeInfo.getParameterType() != null) {
+                type = MapProxy.getRawType(attributeInfo.getParameterType(), 0);
+            }
+            if (type == long.class || type == Long.class) {
+                return new LongColumn(capacity);
+            } else if (type == int.class || type == Integer.class || type == short.class || type == Short.class
+                    || type == byte.class || type == Byte.class || type == char.class || type == Character.class) {
+                return new IntColumn(type, capacity);
+            } else if (type == double.class || type == Double.class || type == float.class || type == Float.class) {
+                return new DoubleColumn(type, capacity);
+            } else if (type == boolean.class || type == Boolean.class) {
+                return new BooleanColumn();
+            }
+            return new ObjectColumn(capacity);
+        }
+
+        abstract Object get(int row);
+
+        abstract void set(int row, Object value);
+
+        abstract void grow(int capacity);
+
+        abstract void copy(int from, int to);
+
+        /**
+         * Returns a copy of this column with the given capacity.
+         */
+        abstract Column copy(int capacity);
+
+        <C extends Column> C copyPresent(C copy) {
+            copy.present.or(present);
+            return copy;
+        }
+
+        void clear(int row) {
+            present.clear(row);
+        }
+
+        void clearAll(int size) {
+            present.clear();
+        }
+
+        void shift(int from, int to, int length) {
+            if (from > to) {
+                for (int i = 0; i < length; i++) {
+                    copy(from + i, to + i);
+                }
+            } else {
+                for (int i = length - 1; i >= 0; i--) {
+                    copy(from + i, to + i);
+                }
+            }
+        }
+    }
+
+    private abstract static class PrimitiveColumn extends Column {
+        final BitSet nulls = new BitSet();
+
+        @Override
+        final Object get(int row) {
+            return nulls.get(row) ? null : getValue(row);
+        }
+
+        @Override
+        final void set(int row, Object value) {
+            present.set(row);
+            nulls.set(row, value == null);
+            if (value != null) {
+                setValue(row, value);
+            }
+        }
+
+        @Override
+        final void copy(int from, int to) {
+            present.set(to, present.get(from));
+            nulls.set(to, nulls.get(from));
+            copyValue(from, to);
+        }
+
+        @Override
+        <C extends Column> C copyPresent(C copy) {
+            ((PrimitiveColumn) copy).nulls.or(nulls);
+            return super.copyPresent(copy);
+        }
+
+        abstract Object getValue(int row);
+
+        abstract void setValue(int row, Object value);
+
+        abstract void copyValue(int from, int to);
+    }
+
+    private static final class LongColumn extends PrimitiveColumn {
+        long[] values;
+
+        LongColumn(int capacity) {
+            values = new long[capacity];
+        }
+
+        @Override
+        Object getValue(int row) {
+            return values[row];
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            values[row] = ((Number) value).longValue();
+        }
+
+        @Override
+        void copyValue(int from, int to) {
+            values[to] = values[from];
+        }
+
+        @Override
+        Column copy(int capacity) {
+            LongColumn copy = new LongColumn(0);
+            copy.values = Arrays.copyOf(values, capacity);
+            return copyPresent(copy);
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    private static final class IntColumn extends PrimitiveColumn {
+        final Class type;
+        int[] values;
+
+        IntColumn(Class type, int capacity) {
+            this.type = type;
+            values = new int[capacity];
+        }
+
+        @Override
+        Object getValue(int row) {
+            if (type == short.class || type == Short.class) {
+                return (short) values[row];
+            } else if (type == byte.class || type == Byte.class) {
+                return (byte) values[row];
+            } else if (type == char.class || type == Character.class) {
+                return (char) values[row];
+            }
+            return values[row];
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            values[row] = value instanceof Character ? (Character) value : ((Number) value).intValue();
+        }
+
+        @Override
+        void copyValue(int from, int to) {
+            values[to] = values[from];
+        }
+
+        @Override
+        Column copy(int capacity) {
+            IntColumn copy = new IntColumn(type, 0);
+            copy.values = Arrays.copyOf(values, capacity);
+            return copyPresent(copy);
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    private static final class DoubleColumn extends PrimitiveColumn {
+        final Class type;
+        double[] values;
+
+        DoubleColumn(Class type, int capacity) {
+            this.type = type;
+            values = new double[capacity];
+        }
+
+        @Override
+        Object getValue(int row) {
+            if (type == float.class || type == Float.class) {
+                return (float) values[row];
+            }
+            return values[row];
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            values[row] = ((Number) value).doubleValue();
+        }
+
+        @Override
+        void copyValue(int from, int to) {
+            values[to] = values[from];
+        }
+
+        @Override
+        Column copy(int capacity) {
+            DoubleColumn copy = new DoubleColumn(type, 0);
+            copy.values = Arrays.copyOf(values, capacity);
+            return copyPresent(copy);
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    private static final class BooleanColumn extends PrimitiveColumn {
+        final BitSet values = new BitSet();
+
+        @Override
+        Object getValue(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            values.set(row, (Boolean) value);
+        }
+
+        @Override
+        void copyValue(int from, int to) {
+            values.set(to, values.get(from));
+        }
+
+        @Override
+        Column copy(int capacity) {
+            BooleanColumn copy = new BooleanColumn();
+            copy.values.or(values);
+            return copyPresent(copy);
+        }
+
+        @Override
+        void grow(int capacity) {
+        }
+    }
+
+    private static final class ObjectColumn extends Column {
+        Object[] values;
+
+        ObjectColumn(int capacity) {
+            values = new Object[capacity];
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void set(int row, Object value) {
+            present.set(row);
+            values[row] = value;
+        }
+
+        @Override
+        void clear(int row) {
+            super.clear(row);
+            values[row] = null;
+        }
+
+        @Override
+        void clearAll(int size) {
+            super.clearAll(size);
+            Arrays.fill(values, 0, size, null);
+        }
+
+        @Override
+        void copy(int from, int to) {
+            present.set(to, present.get(from));
+            values[to] = values[from];
+        }
+
+        @Override
+        Column copy(int capacity) {
+            ObjectColumn copy = new ObjectColumn(0);
+            copy.values = Arrays.copyOf(values, capacity);
+            return copyPresent(copy);
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+}
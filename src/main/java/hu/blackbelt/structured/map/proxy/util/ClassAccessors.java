@@ -0,0 +1,186 @@
+package hu.blackbelt.structured.map.proxy.util;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.CaseFormat.LOWER_CAMEL;
+import static com.google.common.base.CaseFormat.UPPER_CAMEL;
+import static hu.blackbelt.structured.map.proxy.MapProxy.DEFULT_STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND;
+import static hu.blackbelt.structured.map.proxy.MapProxy.STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND;
+import static java.lang.String.format;
+
+/**
+ * The public methods and the fields of a class indexed by name. The index is built once per class, the getters,
+ * setters and adders are resolved by property name and their MethodHandles are created on first use.
+ */
+public final class ClassAccessors {
+
+    private static final String GET_PREFIX = "get";
+    private static final String SET_PREFIX = "set";
+    private static final String ADD_PREFIX = "addTo";
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private static LoadingCache<Class<?>, ClassAccessors> accessorsCache = CacheBuilder
+            .newBuilder()
+            .expireAfterAccess(Long.parseLong(System.getProperty(STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND, DEFULT_STRUCTURED_MAP_PROXY_CACHE_EXPIRE_IN_SECOND)), TimeUnit.SECONDS)
+            .build(new CacheLoader<Class<?>, ClassAccessors>() {
+                @Override
+                public ClassAccessors load(Class<?> cl) {
+                    return new ClassAccessors(cl);
+                }
+            });
+
+    private final Class<?> cl;
+    private final Map<String, Method> methods = new HashMap<>();
+    private final Map<String, Field> fields = new HashMap<>();
+
+    private final Map<String, Method> getters = new ConcurrentHashMap<>();
+    private final Map<String, Method> setters = new ConcurrentHashMap<>();
+    private final Map<String, Method> adders = new ConcurrentHashMap<>();
+    private final Map<Method, MethodHandle> getterHandles = new ConcurrentHashMap<>();
+    private final Map<Method, MethodHandle> invokers = new ConcurrentHashMap<>();
+    private final Map<String, MethodHandle> fieldReaders = new ConcurrentHashMap<>();
+
+    private ClassAccessors(Class<?> cl) {
+        this.cl = cl;
+        for (Method method : cl.getMethods()) {
+            methods.putIfAbsent(method.getName(), method);
+        }
+        for (Class<?> current = cl; current != null; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                fields.putIfAbsent(field.getName(), field);
+            }
+        }
+    }
+
+    public static ClassAccessors of(Class<?> cl) {
+        return accessorsCache.getUnchecked(cl);
+    }
+
+    /**
+     * Returns the first public method with the given name in the order of {@link Class#getMethods()}.
+     */
+    public Method getMethod(String name) {
+        Method method = methods.get(name);
+        if (method == null) {
+            throw new IllegalArgumentException(format("No method found for %s class and %s name.", cl.getName(), name));
+        }
+        return method;
+    }
+
+    public Method getGetter(String propertyName) {
+        return getters.computeIfAbsent(propertyName, p -> getMethod(GET_PREFIX + LOWER_CAMEL.to(UPPER_CAMEL, p)));
+    }
+
+    public Method getSetter(String propertyName) {
+        return setters.computeIfAbsent(propertyName, p -> getMethod(SET_PREFIX + LOWER_CAMEL.to(UPPER_CAMEL, p)));
+    }
+
+    public Method getAdder(String propertyName) {
+        return adders.computeIfAbsent(propertyName, p -> getMethod(ADD_PREFIX + LOWER_CAMEL.to(UPPER_CAMEL, p)));
+    }
+
+    /**
+     * Returns the getter of the property with <code>(Object)Object</code> type.
+     */
+    public MethodHandle getGetterHandle(String propertyName) {
+        return getterHandles.computeIfAbsent(getGetter(propertyName), m -> unreflect(m).asType(GETTER_TYPE));
+    }
+
+    /**
+     * Returns the setter of the property with <code>(Object, Object[])Object</code> type, the array contains
+     * the arguments of the setter.
+     */
+    public MethodHandle getSetterHandle(String propertyName) {
+        return toInvoker(getSetter(propertyName));
+    }
+
+    /**
+     * Returns the adder of the property with <code>(Object, Object[])Object</code> type, the array contains
+     * the arguments of the adder.
+     */
+    public MethodHandle getAdderHandle(String propertyName) {
+        return toInvoker(getAdder(propertyName));
+    }
+
+    /**
+     * Returns the reader of the field declared by this class or its superclasses with <code>(Object)Object</code>
+     * type. Static fields ignore the argument.
+     */
+    public MethodHandle getFieldReader(String fieldName) {
+        return fieldReaders.computeIfAbsent(fieldName, name -> {
+            Field field = fields.get(name);
+            if (field == null) {
+                throw new IllegalArgumentException(format("No field found for %s class and %s name.", cl.getName(), name));
+            }
+            MethodHandle reader = toVarHandle(field).toMethodHandle(VarHandle.AccessMode.GET);
+            if (Modifier.isStatic(field.getModifiers())) {
+                reader = MethodHandles.dropArguments(reader, 0, Object.class);
+            }
+            return reader.asType(GETTER_TYPE);
+        });
+    }
+
+    private MethodHandle toInvoker(Method method) {
+        return invokers.computeIfAbsent(method, m -> unreflect(m)
+                .asFixedArity()
+                .asSpreader(Object[].class, m.getParameterCount())
+                .asType(INVOKER_TYPE));
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        try {
+            try {
+                return MethodHandles.lookup().unreflect(method);
+            } catch (IllegalAccessException e) {
+                method.setAccessible(true);
+                return MethodHandles.lookup().unreflect(method);
+            }
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new IllegalStateException(format("Could not access method %s of %s", method.getName(), method.getDeclaringClass().getName()), e);
+        }
+    }
+
+    private static VarHandle toVarHandle(Field field) {
+        try {
+            return MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup()).unreflectVarHandle(field);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new IllegalStateException(format("Could not access field %s of %s", field.getName(), field.getDeclaringClass().getName()), e);
+        }
+    }
+}
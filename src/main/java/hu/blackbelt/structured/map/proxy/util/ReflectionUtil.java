@@ -21,54 +21,31 @@ package hu.blackbelt.structured.map.proxy.util;
  */
 
 import com.google.common.base.Predicate;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Iterator;
-import java.util.List;
-
-import static com.google.common.base.CaseFormat.LOWER_CAMEL;
-import static com.google.common.base.CaseFormat.UPPER_CAMEL;
-import static com.google.common.collect.Lists.newArrayList;
-import static java.lang.String.format;
 
 public final class ReflectionUtil {
 
-    private static final String GET_PREFIX = "get";
-    private static final String SET_PREFIX = "set";
-    private static final String ADD_PREFIX = "addTo";
-
     private ReflectionUtil() {
     }
 
     public static Method findGetter(Class<?> cl, String name) {
-        return findMethodByName(cl, GET_PREFIX + LOWER_CAMEL.to(UPPER_CAMEL, name));
+        return ClassAccessors.of(cl).getGetter(name);
     }
 
     public static Method findSetter(Class<?> cl, String name) {
-        return findMethodByName(cl, SET_PREFIX + LOWER_CAMEL.to(UPPER_CAMEL, name));
+        return ClassAccessors.of(cl).getSetter(name);
     }
 
     public static Method findAdder(Class<?> cl, String name) {
-        return findMethodByName(cl, ADD_PREFIX + LOWER_CAMEL.to(UPPER_CAMEL, name));
+        return ClassAccessors.of(cl).getAdder(name);
     }
 
     public static Method findMethodByName(Class<?> cl, String name) {
-        return findMethodByName(cl.getMethods(), cl, name);
-    }
-
-    private static Method findMethodByName(Method[] availableMethods, Class<?> cl, String name) {
-        List<Method> methods = newArrayList();
-        for (Method method : availableMethods) {
-            if (method.getName().equals(name)) {
-                methods.add(method);
-            }
-        }
-        if (methods.isEmpty()) {
-            throw new IllegalArgumentException(format("No method found for %s class and %s name.", cl.getName(), name));
-        } else {
-            return methods.get(0);
-        }
+        return ClassAccessors.of(cl).getMethod(name);
     }
 
     public static <T> Predicate<Method> methodParameterType(final String name, final Class<T> cl) {
@@ -81,16 +58,10 @@ public final class ReflectionUtil {
     }
     public static Object getFieldValue(Object target, Field field) {
         try {
-            boolean state = field.isAccessible();
-            if (!state) {
-                field.setAccessible(true);
-            }
-            Object ret =  field.get(target);
-            if (!state) {
-                field.setAccessible(false);
-            }
-            return ret;
-        } catch (IllegalAccessException e) {
+            return (Object) ClassAccessors.of(field.getDeclaringClass()).getFieldReader(field.getName()).invokeExact(target);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
             throw new RuntimeException("cannot get field value via reflection", e);
         }
     }
@@ -98,17 +69,18 @@ public final class ReflectionUtil {
     public static Object getFieldValue(Object subject, Iterator<String> pathElements) {
         Object ret = null;
         if (subject != null && pathElements != null && pathElements.hasNext()) {
-            Method getter = findGetter(subject.getClass(), pathElements.next());
-            if (getter != null) {
-                try {
-                    ret = getter.invoke(subject);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    String msg = String.format("Can not get field[%s] value on objectClass[%s]", getter.getName(), subject.getClass());
-                    throw new IllegalArgumentException(msg, e);
-                }
-                if (pathElements.hasNext() && ret != null) {
-                    ret = getFieldValue(ret, pathElements);
-                }
+            ClassAccessors accessors = ClassAccessors.of(subject.getClass());
+            String name = pathElements.next();
+            Method getter = accessors.getGetter(name);
+            MethodHandle getterHandle = accessors.getGetterHandle(name);
+            try {
+                ret = (Object) getterHandle.invokeExact(subject);
+            } catch (Throwable e) {
+                String msg = String.format("Can not get field[%s] value on objectClass[%s]", getter.getName(), subject.getClass());
+                throw new IllegalArgumentException(msg, new InvocationTargetException(e));
+            }
+            if (pathElements.hasNext() && ret != null) {
+                ret = getFieldValue(ret, pathElements);
             }
         }
         return ret;
@@ -0,0 +1,106 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CompositeClassLoaderTest {
+
+    private static final String PROVIDED_CLASS = "hu.blackbelt.structured.map.proxy.Provided";
+    private static final String MISSING_CLASS = "hu.blackbelt.structured.map.proxy.Missing";
+
+    @Test
+    public void testMissingClassIsCached() {
+        TestClassLoader delegate = new TestClassLoader(MapHolder.class);
+        CompositeClassLoader classLoader = new CompositeClassLoader(delegate);
+
+        assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass(MISSING_CLASS));
+        assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass(MISSING_CLASS));
+        assertEquals(1, delegate.lookups.get());
+
+        classLoader.append(new TestClassLoader(MapProxy.class));
+        assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass(MISSING_CLASS));
+        assertEquals(2, delegate.lookups.get());
+    }
+
+    @Test
+    public void testFoundClassIsCached() throws Exception {
+        TestClassLoader delegate = new TestClassLoader(MapHolder.class);
+        CompositeClassLoader classLoader = new CompositeClassLoader(delegate);
+
+        assertSame(MapHolder.class, classLoader.loadClass(PROVIDED_CLASS));
+        assertSame(MapHolder.class, classLoader.loadClass(PROVIDED_CLASS));
+        assertEquals(1, delegate.lookups.get());
+    }
+
+    @Test
+    public void testAppendAndRemove() throws Exception {
+        CompositeClassLoader classLoader = new CompositeClassLoader(new TestClassLoader(null));
+        assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass(PROVIDED_CLASS));
+
+        TestClassLoader delegate = new TestClassLoader(MapHolder.class);
+        classLoader.append(delegate);
+        assertSame(MapHolder.class, classLoader.loadClass(PROVIDED_CLASS));
+
+        classLoader.remove(delegate);
+        assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass(PROVIDED_CLASS));
+    }
+
+    @Test
+    public void testInsert() throws Exception {
+        TestClassLoader appended = new TestClassLoader(MapProxy.class);
+        TestClassLoader inserted = new TestClassLoader(MapHolder.class);
+        CompositeClassLoader classLoader = new CompositeClassLoader(appended);
+        classLoader.insert(inserted);
+        classLoader.insert(appended);
+
+        assertSame(MapHolder.class, classLoader.loadClass(PROVIDED_CLASS));
+        assertEquals(0, appended.lookups.get());
+    }
+
+    /**
+     * Provides the given class as {@link #PROVIDED_CLASS} and counts the lookups.
+     */
+    private static class TestClassLoader extends ClassLoader {
+        private final Class<?> provided;
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        TestClassLoader(Class<?> provided) {
+            super(null);
+            this.provided = provided;
+        }
+
+        @Override
+        public Class<?> loadClass(String name) throws ClassNotFoundException {
+            lookups.incrementAndGet();
+            if (provided != null && PROVIDED_CLASS.equals(name)) {
+                return provided;
+            }
+            throw new ClassNotFoundException(name);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import hu.blackbelt.structured.map.proxy.entity.User;
+import hu.blackbelt.structured.map.proxy.entity.UserDetail;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrentMapProxyTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 1000;
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        User user = MapProxy.builder(User.class).withConcurrent(true).newInstance();
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                user.addToUserDetails(userDetail(thread + "-" + i));
+            }
+        });
+
+        assertEquals(THREADS * ITERATIONS, user.getUserDetails().size());
+        Set<String> ids = user.getUserDetails().stream().map(UserDetail::getId).collect(Collectors.toSet());
+        assertEquals(THREADS * ITERATIONS, ids.size());
+        assertTrue(((MapHolder) user).changedKeys().contains("userDetails"));
+    }
+
+    @Test
+    public void testConcurrentAddAndRemove() throws Exception {
+        User user = MapProxy.builder(User.class).withConcurrent(true).newInstance();
+        List<UserDetail> initial = new ArrayList<>();
+        for (int i = 0; i < ITERATIONS; i++) {
+            initial.add(userDetail("initial-" + i));
+        }
+        user.addAllToUserDetails(initial);
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (thread % 2 == 0) {
+                    user.addToUserDetails(userDetail(thread + "-" + i));
+                } else if (i % (THREADS / 2) == thread / 2) {
+                    user.removeFromUserDetails(initial.get(i));
+                }
+            }
+        });
+
+        assertEquals(THREADS / 2 * ITERATIONS, user.getUserDetails().size());
+        assertTrue(user.getUserDetails().stream().noneMatch(u -> u.getId().startsWith("initial-")));
+    }
+
+    @Test
+    public void testConcurrentCompute() throws Exception {
+        MapHolder user = (MapHolder) MapProxy.builder(User.class).withConcurrent(true).newInstance();
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                user.<String>compute("credential", c -> c == null ? "1" : String.valueOf(Integer.parseInt(c) + 1));
+            }
+        });
+
+        assertEquals(String.valueOf(THREADS * ITERATIONS), ((User) user).getCredential());
+    }
+
+    @Test
+    public void testConcurrentOptionalReadsAfterFreeze() throws Exception {
+        User user = MapProxy.builder(User.class).newInstance();
+        user.setFirstName("First");
+        user.setLastName("Last");
+        assertEquals(Optional.of("First"), user.getFirstName());
+        ((MapHolder) user).freeze();
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                assertEquals(Optional.of("First"), user.getFirstName());
+                assertEquals(Optional.of("Last"), user.getLastName());
+            }
+        });
+    }
+
+    @Test
+    public void testConcurrentStorageKeepsNullValues() {
+        User user = MapProxy.builder(User.class).withConcurrent(true).newInstance();
+        user.setEmail(null);
+
+        assertNull(user.getEmail());
+        assertTrue(((MapHolder) user).toMap().containsKey("email"));
+    }
+
+    @Test
+    public void testCompute() {
+        User user = MapProxy.builder(User.class).newInstance();
+        user.setLoginName("test");
+        MapHolder holder = (MapHolder) user;
+        holder.markClean();
+
+        assertEquals("test1", holder.<String>compute("loginName", l -> l + "1"));
+        assertEquals(Optional.of("test1"), user.getLoginName());
+        assertEquals(Collections.singleton("loginName"), holder.changedKeys());
+
+        MapHolder immutable = (MapHolder) MapProxy.builder(User.class).withImmutable(true).newInstance();
+        assertThrows(IllegalStateException.class, () -> immutable.compute("loginName", l -> l));
+        assertThrows(IllegalArgumentException.class, () -> holder.compute("unknown", l -> l));
+    }
+
+    private static UserDetail userDetail(String id) {
+        UserDetail userDetail = MapProxy.builder(UserDetail.class).newInstance();
+        userDetail.setId(id);
+        return userDetail;
+    }
+
+    private interface ThreadTask {
+        void run(int thread);
+    }
+
+    private static void runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int current = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run(current);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableMap;
+import hu.blackbelt.structured.map.proxy.entity.User;
+import hu.blackbelt.structured.map.proxy.entity.UserBean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FieldMaskTest {
+
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("email", "test@test.com");
+        map.put("loginName", "test");
+        map.put("singleUserDetail", ImmutableMap.of("__id", "1", "note", "Note1"));
+        map.put("userDetails", Arrays.asList(
+                ImmutableMap.of("__id", "2", "note", "Note2"),
+                ImmutableMap.of("__id", "3", "note", "Note3")));
+        user = MapProxy.builder(User.class).withMap(map).newInstance();
+    }
+
+    @Test
+    public void testInclude() {
+        Map<String, Object> map = ((MapHolder) user).toMap(FieldMask.include("email", "singleUserDetail.note"));
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList("email", "singleUserDetail")), map.keySet());
+        assertEquals(Collections.singletonMap("note", "Note1"), map.get("singleUserDetail"));
+    }
+
+    @Test
+    public void testIncludeCollectionElements() {
+        Map<String, Object> map = ((MapHolder) user).toMap(FieldMask.include("userDetails.id"));
+
+        assertEquals(Arrays.asList(Collections.singletonMap("__id", "2"), Collections.singletonMap("__id", "3")), map.get("userDetails"));
+    }
+
+    @Test
+    public void testExclude() {
+        Map<String, Object> map = ((MapHolder) user).toMap(FieldMask.exclude("userDetails", "singleUserDetail.note"));
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList("email", "loginName", "singleUserDetail")), map.keySet());
+        assertEquals(Collections.singletonMap("__id", "1"), map.get("singleUserDetail"));
+    }
+
+    @Test
+    public void testMaxDepth() {
+        Map<String, Object> map = ((MapHolder) user).toMap(FieldMask.ALL.withMaxDepth(1));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("email", "loginName")), map.keySet());
+
+        map = ((MapHolder) user).toMap(FieldMask.ALL.withMaxDepth(2));
+        assertEquals(((MapHolder) user).toMap(), map);
+
+        assertThrows(IllegalArgumentException.class, () -> FieldMask.ALL.withMaxDepth(0));
+    }
+
+    @Test
+    public void testAdaptTo() {
+        FieldMask mask = FieldMask.exclude("userDetails");
+
+        assertEquals(((MapHolder) user).toMap(mask), ((MapHolder) user).adaptTo(Map.class, mask));
+
+        User projection = ((MapHolder) user).adaptTo(User.class, mask);
+        assertNull(projection.getUserDetails());
+        assertEquals("Note1", projection.getSingleUserDetail().getNote());
+
+        UserBean bean = ((MapHolder) user).adaptTo(UserBean.class, mask);
+        assertNull(bean.getUserDetails());
+        assertEquals("test@test.com", bean.getEmail());
+    }
+}
@@ -0,0 +1,133 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableMap;
+import hu.blackbelt.structured.map.proxy.entity.Event;
+import hu.blackbelt.structured.map.proxy.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Fails when reading an attribute starts allocating in steady state. The allocated bytes of the current thread
+ * are measured by {@link com.sun.management.ThreadMXBean}.
+ */
+public class GetterAllocationTest {
+
+    private static final int WARMUP_ITERATIONS = 50_000;
+    private static final int ITERATIONS = 100_000;
+    // Tolerates the noise of the measurement, a single allocation per read would be more than a megabyte
+    private static final long MAX_ALLOCATED_BYTES = 16 * 1024;
+
+    private com.sun.management.ThreadMXBean threadMXBean;
+    private User mutable;
+    private User immutable;
+    private Event event;
+
+    @BeforeEach
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported(), "Allocated memory is not measured");
+        threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("__id", "1");
+        map.put("email", "test@test.com");
+        map.put("active", true);
+        map.put("firstName", "First");
+        map.put("loginName", null);
+        map.put("singleUserDetail", ImmutableMap.of("__id", "1", "note", "Note1"));
+        mutable = MapProxy.builder(User.class).withNullSafeCollection(true).withMap(map).newInstance();
+        immutable = MapProxy.builder(User.class).withNullSafeCollection(true).withImmutable(true).withMap(map).newInstance();
+
+        event = MapProxy.builder(Event.class).newInstance();
+        event.setPrivate(true);
+        event.setTitle("Title");
+    }
+
+    @Test
+    public void testPlainGetters() {
+        assertNoAllocation("getEmail", () -> mutable.getEmail());
+        assertNoAllocation("getEmail immutable", () -> immutable.getEmail());
+        assertNoAllocation("getActive", () -> mutable.getActive());
+        assertNoAllocation("getTitle", () -> event.getTitle());
+        assertNoAllocation("getSingleUserDetail", () -> immutable.getSingleUserDetail().getNote());
+        assertNoAllocation("identifier", () -> immutable.identifier().getId());
+    }
+
+    @Test
+    public void testPrimitiveGetters() {
+        assertNoAllocation("isPrivate", () -> event.isPrivate() ? event : null);
+    }
+
+    @Test
+    public void testOptionalGetters() {
+        assertEquals("First", mutable.getFirstName().get());
+        assertNoAllocation("getFirstName", () -> mutable.getFirstName());
+        assertNoAllocation("getFirstName immutable", () -> immutable.getFirstName());
+        assertNoAllocation("getLoginName", () -> mutable.getLoginName());
+    }
+
+    @Test
+    public void testCursorOptionalGetters() {
+        Map<String, Object> first = ImmutableMap.of("__id", "1", "firstName", "First", "lastName", "Last");
+        Map<String, Object> second = ImmutableMap.of("__id", "2", "firstName", "First", "lastName", "Last");
+        MapProxyCursor<User> cursor = MapProxy.cursor(User.class);
+        int[] row = new int[1];
+
+        assertNoAllocation("cursor getFirstName", () -> {
+            User user = cursor.bind(row[0]++ % 2 == 0 ? first : second);
+            return user.getFirstName().isPresent() && user.getLastName().isPresent() ? user : null;
+        });
+    }
+
+    @Test
+    public void testNullSafeCollectionGetters() {
+        assertTrue(mutable.getUserDetails().isEmpty());
+        assertNoAllocation("getUserDetails", () -> mutable.getUserDetails());
+        assertNoAllocation("getUserDetails immutable", () -> immutable.getUserDetails());
+    }
+
+    private void assertNoAllocation(String name, Supplier<Object> getter) {
+        Object sink = null;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink = getter.get();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = getter.get();
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(allocated < MAX_ALLOCATED_BYTES, name + " allocated " + allocated + " bytes in " + ITERATIONS + " reads, last value " + sink);
+    }
+}
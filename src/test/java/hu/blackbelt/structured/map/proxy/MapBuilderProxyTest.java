@@ -232,6 +232,19 @@ public class MapBuilderProxyTest {
         assertEquals(1, user.getUserDetails().stream().filter(userDetail -> userDetail.getId().equals("id4")).count());
     }
 
+    @Test
+    void testBuilderFromImmutableInstance() {
+        User immutable = MapProxy.builder(User.class).withImmutable(true)
+                .withMap(ImmutableMap.of("__id", "1", "userDetails", List.of(ImmutableMap.of("__id", "2", "note", "Note2"))))
+                .newInstance();
+
+        User user = MapBuilderProxy.builder(UserBuilder.class, immutable).newInstance().loginName("teszt").build();
+
+        user.getUserDetails().iterator().next().setNote("Changed");
+        assertEquals("Changed", user.getUserDetails().iterator().next().getNote());
+        assertEquals("Note2", immutable.getUserDetails().iterator().next().getNote());
+    }
+
     @Test
     void testWithWithStringSubstitution() {
         UserDetail userDetail = MapBuilderProxy.builder(UserDetailBuilder.class, UserDetail.class).newInstance().id("1").note("Note %d").build();
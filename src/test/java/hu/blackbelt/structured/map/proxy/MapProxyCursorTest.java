@@ -0,0 +1,74 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableMap;
+import hu.blackbelt.structured.map.proxy.entity.Country;
+import hu.blackbelt.structured.map.proxy.entity.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MapProxyCursorTest {
+
+    @Test
+    public void testBindRows() {
+        List<Map<String, Object>> rows = Arrays.asList(
+                ImmutableMap.of("__id", "1", "email", "one@test.com", "country", "HU",
+                        "singleUserDetail", ImmutableMap.of("__id", "11", "note", "Note1")),
+                ImmutableMap.of("__id", "2", "loginName", "two", "__type", "USER"));
+
+        MapProxyCursor<User> cursor = MapProxy.cursor(User.class);
+
+        User first = cursor.bind(rows.get(0));
+        assertSame(cursor.get(), first);
+        assertEquals("1", first.getId());
+        assertEquals("one@test.com", first.getEmail());
+        assertThat(first.getCountry(), is(Country.HU));
+        assertEquals("Note1", first.getSingleUserDetail().getNote());
+        assertEquals("1", first.identifier().getId());
+
+        User second = cursor.bind(rows.get(1));
+        assertSame(first, second);
+        assertEquals("2", second.getId());
+        assertNull(second.getEmail());
+        assertNull(second.getSingleUserDetail());
+        assertEquals(Optional.of("two"), second.getLoginName());
+        assertEquals("USER", second.identifier().getType());
+    }
+
+    @Test
+    public void testCursorIsReadOnly() {
+        User user = MapProxy.cursor(User.class).bind(ImmutableMap.of("__id", "1"));
+
+        assertThrows(IllegalStateException.class, () -> user.setEmail("test@test.com"));
+    }
+}
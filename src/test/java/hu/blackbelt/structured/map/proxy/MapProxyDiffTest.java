@@ -0,0 +1,170 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import hu.blackbelt.structured.map.proxy.MapProxyDiff.Change;
+import hu.blackbelt.structured.map.proxy.MapProxyDiff.Operation;
+import hu.blackbelt.structured.map.proxy.entity.User;
+import hu.blackbelt.structured.map.proxy.entity.UserDetail;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MapProxyDiffTest {
+
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("email", "test@test.com");
+        map.put("loginName", "test");
+        map.put("singleUserDetail", ImmutableMap.of("__id", "1", "note", "Note1"));
+        map.put("userDetails", Arrays.asList(
+                ImmutableMap.of("__id", "2", "note", "Note2"),
+                ImmutableMap.of("__id", "3", "note", "Note3")));
+        user = MapProxy.builder(User.class).withMap(map).newInstance();
+    }
+
+    @Test
+    public void testCompareByIdentity() {
+        User modified = copy(user);
+        modified.setEmail("modified@test.com");
+        modified.setLoginName(null);
+        modified.getUserDetails().stream().filter(d -> "2".equals(d.getId())).findFirst().get().setNote("Modified");
+        modified.removeFromUserDetails(modified.getUserDetails().stream().filter(d -> "3".equals(d.getId())).findFirst().get());
+        UserDetail added = MapProxy.builder(UserDetail.class).newInstance();
+        added.setId("4");
+        modified.addToUserDetails(added);
+
+        List<Change> changes = MapProxyDiff.compare(user, modified, "__id").getChanges();
+
+        assertEquals(5, changes.size());
+        assertChange(changes, Operation.SET, ImmutableList.of("email"), "modified@test.com");
+        assertChange(changes, Operation.SET, ImmutableList.of("loginName"), null);
+        assertChange(changes, Operation.SET, ImmutableList.of("userDetails", "2", "note"), "Modified");
+        assertChange(changes, Operation.REMOVE, ImmutableList.of("userDetails", "3"), null);
+        assertChange(changes, Operation.ADD, ImmutableList.of("userDetails"), added);
+    }
+
+    @Test
+    public void testCompareWithoutIdentity() {
+        User modified = copy(user);
+        modified.getUserDetails().iterator().next().setNote("Modified");
+        modified.getSingleUserDetail().setNote("Modified");
+
+        List<Change> changes = MapProxyDiff.compare(user, modified).getChanges();
+
+        assertEquals(2, changes.size());
+        assertChange(changes, Operation.SET, ImmutableList.of("singleUserDetail", "note"), "Modified");
+        assertChange(changes, Operation.SET, ImmutableList.of("userDetails"), modified.getUserDetails());
+    }
+
+    @Test
+    public void testUnchangedCopies() {
+        assertTrue(MapProxyDiff.compare(user, user).isEmpty());
+        assertTrue(MapProxyDiff.compare(user, copy(user), "__id").isEmpty());
+
+        User equal = MapProxy.builder(User.class).withMap(((MapHolder) user).toMap()).newInstance();
+        assertTrue(MapProxyDiff.compare(user, equal, "__id").isEmpty());
+        assertTrue(MapProxyDiff.compare(user, equal).isEmpty());
+    }
+
+    @Test
+    public void testLazyAndEagerConversion() {
+        Map<String, Object> map = new HashMap<>(((MapHolder) user).toMap());
+        map.put("country", "HU");
+        User eager = MapProxy.builder(User.class).withMap(map).newInstance();
+        User lazy = MapProxy.builder(User.class).withTrustedMap(map).newInstance();
+
+        assertTrue(MapProxyDiff.compare(eager, lazy, "__id").isEmpty());
+        assertTrue(MapProxyDiff.compare(lazy, eager).isEmpty());
+
+        User modified = copy(eager);
+        modified.getUserDetails().stream().filter(d -> "2".equals(d.getId())).findFirst().get().setNote("Modified");
+        MapProxyDiff.compare(eager, modified, "__id").applyTo(lazy);
+        assertEquals("Modified", lazy.getUserDetails().stream().filter(d -> "2".equals(d.getId())).findFirst().get().getNote());
+        assertTrue(MapProxyDiff.compare(lazy, modified, "__id").isEmpty());
+    }
+
+    @Test
+    public void testApplyTo() {
+        User modified = copy(user);
+        modified.setEmail("modified@test.com");
+        modified.getSingleUserDetail().setNote("Modified");
+        modified.getUserDetails().stream().filter(d -> "2".equals(d.getId())).findFirst().get().setNote("Modified");
+        modified.removeFromUserDetails(modified.getUserDetails().stream().filter(d -> "3".equals(d.getId())).findFirst().get());
+        UserDetail added = MapProxy.builder(UserDetail.class).newInstance();
+        added.setId("4");
+        modified.addToUserDetails(added);
+        MapProxyDiff diff = MapProxyDiff.compare(user, modified, "__id");
+
+        User target = copy(user);
+        diff.applyTo(target);
+
+        assertTrue(MapProxyDiff.compare(target, modified, "__id").isEmpty());
+        assertEquals("test@test.com", user.getEmail());
+        assertEquals("Note1", user.getSingleUserDetail().getNote());
+        assertEquals(2, user.getUserDetails().size());
+        assertTrue(((MapHolder) target).changedKeys().containsAll(Arrays.asList("email", "singleUserDetail", "userDetails")));
+
+        added.setNote("Added");
+        assertTrue(target.getUserDetails().stream().noneMatch(d -> "Added".equals(d.getNote())));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        User modified = copy(user);
+        modified.setEmail("modified@test.com");
+        MapProxyDiff diff = MapProxyDiff.compare(user, modified);
+        User immutable = MapProxy.builder(User.class).withImmutable(true).withMap(((MapHolder) user).toMap()).newInstance();
+
+        assertThrows(IllegalStateException.class, () -> diff.applyTo(immutable));
+        assertThrows(IllegalArgumentException.class, () -> MapProxyDiff.compare(user, user.getSingleUserDetail()));
+        assertThrows(IllegalArgumentException.class, () -> MapProxyDiff.compare(user, new Object()));
+    }
+
+    private static User copy(User user) {
+        return MapProxy.<User>builder(MapProxy.getHandler(user)).newInstance();
+    }
+
+    private static void assertChange(List<Change> changes, Operation operation, List<Object> path, Object newValue) {
+        Change change = changes.stream().filter(c -> c.getPath().equals(path)).findFirst()
+                .orElseThrow(() -> new AssertionError("No change for " + path + " in " + changes));
+        assertEquals(operation, change.getOperation());
+        if (newValue instanceof MapHolder) {
+            assertSame(newValue, change.getNewValue());
+        } else {
+            assertEquals(newValue, change.getNewValue());
+        }
+    }
+}
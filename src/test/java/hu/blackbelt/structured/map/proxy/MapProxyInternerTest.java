@@ -0,0 +1,117 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableMap;
+import hu.blackbelt.structured.map.proxy.entity.User;
+import hu.blackbelt.structured.map.proxy.entity.UserDetail;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MapProxyInternerTest {
+
+    private MapProxyInterner interner;
+    private Map<String, Object> map;
+
+    @BeforeEach
+    public void setUp() {
+        interner = new MapProxyInterner();
+        map = new HashMap<>();
+        map.put("__id", "1");
+        map.put("email", "test@test.com");
+        map.put("singleUserDetail", ImmutableMap.of("__id", "1", "note", "Note1"));
+        map.put("userDetails", Arrays.asList(
+                ImmutableMap.of("__id", "1", "note", "Note1"),
+                ImmutableMap.of("__id", "2", "note", "Note2")));
+    }
+
+    @Test
+    public void testInternOnCreation() {
+        User user1 = MapProxy.builder(User.class).withImmutable(true).withInterner(interner).withMap(map).newInstance();
+        User user2 = MapProxy.builder(User.class).withImmutable(true).withInterner(interner).withMap(new HashMap<>(map)).newInstance();
+
+        assertSame(user1, user2);
+        Iterator<UserDetail> userDetails = user1.getUserDetails().iterator();
+        assertSame(user1.getSingleUserDetail(), userDetails.next());
+        assertNotSame(user1.getSingleUserDetail(), userDetails.next());
+
+        map.put("email", "other@test.com");
+        User other = MapProxy.builder(User.class).withImmutable(true).withInterner(interner).withMap(map).newInstance();
+        assertNotSame(user1, other);
+        assertSame(user1.getSingleUserDetail(), other.getSingleUserDetail());
+        assertEquals(user1.hashCode(), user2.hashCode());
+        assertEquals(user1, user2);
+    }
+
+    @Test
+    public void testInternOnFreeze() {
+        User user1 = MapProxy.builder(User.class).withInterner(interner).withMap(map).newInstance();
+        User user2 = MapProxy.builder(User.class).withInterner(interner).withMap(map).newInstance();
+        assertNotSame(user1.getSingleUserDetail(), user2.getSingleUserDetail());
+
+        ((MapHolder) user1).freeze();
+        ((MapHolder) user2).freeze();
+
+        assertSame(user1.getSingleUserDetail(), user2.getSingleUserDetail());
+        assertSame(((MapHolder) user1).$internalMap(), ((MapHolder) user2).$internalMap());
+        assertSame(user1, interner.intern(user2));
+
+        User created = MapProxy.builder(User.class).withImmutable(true).withInterner(interner).withMap(map).newInstance();
+        assertSame(user1, created);
+    }
+
+    @Test
+    public void testNotInternedWithMutableValues() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("key", "value");
+        map.put("mapWithoutType", values);
+        User user1 = MapProxy.builder(User.class).withImmutable(true).withInterner(interner).withMap(map).newInstance();
+        User user2 = MapProxy.builder(User.class).withImmutable(true).withInterner(interner).withMap(map).newInstance();
+        assertNotSame(user1, user2);
+        assertSame(user2, interner.intern(user2));
+
+        User frozen1 = MapProxy.builder(User.class).withInterner(interner).withMap(map).newInstance();
+        User frozen2 = MapProxy.builder(User.class).withInterner(interner).withMap(map).newInstance();
+        ((MapHolder) frozen1).freeze();
+        ((MapHolder) frozen2).freeze();
+        assertSame(frozen1, interner.intern(frozen2));
+
+        values.put("key", "changed");
+        assertEquals("value", frozen1.getMapWithoutType().get("key"));
+    }
+
+    @Test
+    public void testInternMutable() {
+        User user = MapProxy.builder(User.class).withMap(map).newInstance();
+        assertThrows(IllegalArgumentException.class, () -> interner.intern(user));
+        assertThrows(IllegalArgumentException.class, () -> interner.intern(new Object()));
+    }
+}
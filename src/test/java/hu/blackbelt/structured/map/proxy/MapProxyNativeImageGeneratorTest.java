@@ -0,0 +1,70 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import hu.blackbelt.structured.map.proxy.entity.Country;
+import hu.blackbelt.structured.map.proxy.entity.Entity;
+import hu.blackbelt.structured.map.proxy.entity.Identifier;
+import hu.blackbelt.structured.map.proxy.entity.User;
+import hu.blackbelt.structured.map.proxy.entity.UserDetail;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MapProxyNativeImageGeneratorTest {
+
+    @Test
+    public void testGenerateConfiguration() throws Exception {
+        Path output = Files.createTempDirectory("native-image");
+        Set<Class> proxies = MapProxyNativeImageGenerator.generate(output, User.class);
+
+        assertThat(proxies, hasItem(User.class));
+        assertThat(proxies, hasItem(UserDetail.class));
+        assertThat(proxies, hasItem(Identifier.class));
+
+        String proxyConfig = new String(Files.readAllBytes(output.resolve(MapProxyNativeImageGenerator.PROXY_CONFIG)), StandardCharsets.UTF_8);
+        assertTrue(proxyConfig.contains("{\"interfaces\": [\"" + User.class.getName() + "\", \"" + Entity.class.getName()));
+        assertTrue(proxyConfig.contains("\"" + MapHolder.class.getName() + "\"]}"));
+
+        String reflectConfig = new String(Files.readAllBytes(output.resolve(MapProxyNativeImageGenerator.REFLECT_CONFIG)), StandardCharsets.UTF_8);
+        assertTrue(reflectConfig.contains("{\"name\": \"" + UserDetail.class.getName() + "\", \"allPublicMethods\": true}"));
+        assertTrue(reflectConfig.contains("{\"name\": \"" + Country.class.getName() + "\", \"allPublicConstructors\": true, \"allPublicMethods\": true}"));
+
+        String resourceConfig = new String(Files.readAllBytes(output.resolve(MapProxyNativeImageGenerator.RESOURCE_CONFIG)), StandardCharsets.UTF_8);
+        assertTrue(resourceConfig.contains(MapProxySchema.RESOURCE_PREFIX));
+    }
+
+    @Test
+    public void testProxyClassIsShared() {
+        User first = MapProxy.builder(User.class).newInstance();
+        User second = MapProxy.builder(User.class).newInstance();
+
+        assertSame(first.getClass(), second.getClass());
+    }
+}
@@ -0,0 +1,114 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import hu.blackbelt.structured.map.proxy.MapProxy.AttributeInfo;
+import hu.blackbelt.structured.map.proxy.annotation.Key;
+import hu.blackbelt.structured.map.proxy.entity.Identifier;
+import hu.blackbelt.structured.map.proxy.entity.User;
+import hu.blackbelt.structured.map.proxy.entity.UserDetail;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MapProxySchemaTest {
+
+    @Test
+    public void testSnapshotMatchesIntrospection() throws Exception {
+        Path output = Files.createTempDirectory("schema");
+        Set<Class> generated = MapProxySchemaGenerator.generate(output, User.class);
+
+        assertThat(generated, hasItem(User.class));
+        assertThat(generated, hasItem(UserDetail.class));
+        assertThat(generated, hasItem(Identifier.class));
+
+        for (Class clazz : generated) {
+            Map<String, AttributeInfo> snapshot;
+            Map<String, Method> staticMethods;
+            try (InputStream in = Files.newInputStream(output.resolve(MapProxySchema.getResourceName(clazz)))) {
+                List<String[]> records = MapProxySchema.read(in);
+                snapshot = MapProxySchema.toTypeInfo(clazz, records);
+                staticMethods = MapProxySchema.toStaticMethods(clazz, records);
+            }
+            Map<String, AttributeInfo> introspected = MapProxy.introspectTypeInfo(clazz);
+
+            assertEquals(introspected.keySet(), snapshot.keySet());
+            introspected.forEach((attrName, expected) -> {
+                AttributeInfo actual = snapshot.get(attrName);
+                assertEquals(expected.getMapKey(), actual.getMapKey());
+                assertEquals(expected.getPropertyType(), actual.getPropertyType());
+                assertEquals(expected.getParameterType(), actual.getParameterType());
+                assertEquals(expected.isComposite(), actual.isComposite());
+            });
+            assertEquals(MapProxy.introspectStaticMethods(clazz), staticMethods);
+        }
+    }
+
+    public interface Contact {
+        String getName();
+        void setName(String name);
+    }
+
+    public interface ContactWithEmail {
+        String getName();
+        void setName(String name);
+        String getEmail();
+    }
+
+    public interface KeyedContact {
+        @Key(name = "fullName")
+        String getName();
+        void setName(String name);
+    }
+
+    @Test
+    public void testStaleSnapshot() throws Exception {
+        Path output = Files.createTempDirectory("schema");
+        MapProxySchemaGenerator.generate(output, Contact.class);
+
+        List<String[]> records;
+        try (InputStream in = Files.newInputStream(output.resolve(MapProxySchema.getResourceName(Contact.class)))) {
+            records = MapProxySchema.read(in);
+        }
+
+        assertTrue(MapProxySchema.isCurrent(Contact.class, records));
+        assertFalse(MapProxySchema.isCurrent(ContactWithEmail.class, records));
+        assertFalse(MapProxySchema.isCurrent(KeyedContact.class, records));
+    }
+
+    @Test
+    public void testMissingSnapshot() {
+        assertNull(MapProxySchema.loadTypeInfo(User.class));
+    }
+}
@@ -0,0 +1,124 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableMap;
+import hu.blackbelt.structured.map.proxy.entity.User;
+import hu.blackbelt.structured.map.proxy.entity.UserDetail;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MapProxyStringFormatTest {
+
+    private Map<String, Object> map;
+
+    @BeforeEach
+    public void setUp() {
+        map = new HashMap<>();
+        map.put("email", "test@test.com");
+        map.put("singleUserDetail", ImmutableMap.of("__id", "1", "note", "Note1"));
+        List<Map<String, Object>> userDetails = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            userDetails.add(ImmutableMap.of("__id", String.valueOf(i)));
+        }
+        map.put("userDetails", userDetails);
+    }
+
+    @Test
+    public void testDefaultFormat() {
+        User user = MapProxy.builder(User.class).withMap(map).newInstance();
+
+        String string = user.toString();
+
+        assertTrue(string.startsWith("PROXY{email=test@test.com, singleUserDetail={ id: 1, note: Note1 }, userDetails=[{ id: 0, note: null }, { id: 1, note: null }"), string);
+        assertEquals(string, MapProxyStringFormat.UNLIMITED_FORMAT.format(user));
+        assertTrue(MapProxyStringFormat.getDefault().isUnlimited());
+    }
+
+    @Test
+    public void testLimits() {
+        User user = MapProxy.builder(User.class).withMap(map).newInstance();
+
+        assertEquals("PROXY{email=test@test.com, singleUserDetail=PROXY{...}, userDetails=[...]}",
+                MapProxyStringFormat.UNLIMITED_FORMAT.withMaxDepth(1).format(user));
+        assertTrue(MapProxyStringFormat.UNLIMITED_FORMAT.withMaxElements(2).format(user)
+                .endsWith("userDetails=[{ id: 0, note: null }, { id: 1, note: null }, ...8 more]}"));
+
+        String truncated = MapProxyStringFormat.UNLIMITED_FORMAT.withMaxLength(20).format(user);
+        assertEquals("PROXY{email=test@tes...", truncated);
+
+        StringBuilder out = new StringBuilder("User: ");
+        MapProxyStringFormat.UNLIMITED_FORMAT.withMaxLength(5).appendTo(user, out);
+        assertEquals("User: PROXY...", out.toString());
+
+        assertThrows(IllegalArgumentException.class, () -> MapProxyStringFormat.UNLIMITED_FORMAT.withMaxElements(0));
+    }
+
+    @Test
+    public void testCachedForImmutable() {
+        User immutable = MapProxy.builder(User.class).withImmutable(true).withMap(map).newInstance();
+        assertSame(immutable.toString(), immutable.toString());
+
+        User mutable = MapProxy.builder(User.class).withMap(map).newInstance();
+        String before = mutable.toString();
+        assertNotSame(before, mutable.toString());
+        mutable.setEmail("changed@test.com");
+        assertTrue(mutable.toString().startsWith("PROXY{email=changed@test.com"));
+    }
+
+    @Test
+    public void testNotCachedForMutableValues() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("key", "value");
+        map.put("mapWithoutType", values);
+        User immutable = MapProxy.builder(User.class).withImmutable(true).withMap(map).newInstance();
+        User trusted = MapProxy.builder(User.class).withImmutable(true).withTrustedMap(ImmutableMap.copyOf(map)).newInstance();
+        User frozen = MapProxy.builder(User.class).withMap(map).newInstance();
+        ((MapHolder) frozen).freeze();
+        String string = frozen.toString();
+        assertTrue(immutable.toString().contains("mapWithoutType={key=value}"), immutable.toString());
+        assertTrue(trusted.toString().contains("mapWithoutType={key=value}"), trusted.toString());
+
+        values.put("key", "changed");
+
+        assertTrue(immutable.toString().contains("mapWithoutType={key=changed}"), immutable.toString());
+        assertTrue(trusted.toString().contains("mapWithoutType={key=changed}"), trusted.toString());
+        assertSame(string, frozen.toString());
+        assertEquals("value", frozen.getMapWithoutType().get("key"));
+    }
+
+    @Test
+    public void testCustomToString() {
+        UserDetail userDetail = MapProxy.builder(UserDetail.class).withMap(ImmutableMap.of("__id", "1", "note", "Note1")).newInstance();
+        assertEquals(userDetail.toString(), MapProxyStringFormat.UNLIMITED_FORMAT.withMaxDepth(1).format(userDetail));
+    }
+}
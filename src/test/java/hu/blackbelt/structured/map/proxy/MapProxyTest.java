@@ -22,12 +22,15 @@ package hu.blackbelt.structured.map.proxy;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import hu.blackbelt.structured.map.proxy.entity.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -36,6 +39,9 @@ import static org.hamcrest.collection.IsMapContaining.hasEntry;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -267,6 +273,348 @@ public class MapProxyTest {
 
     }
 
+    @Test
+    public void testEmbeddedView() {
+        user.setId("ID");
+
+        Identifier identifier = user.getCompositeIdentifier();
+        assertSame(identifier, user.getCompositeIdentifier());
+        assertThat(identifier.getId(), is("ID"));
+
+        identifier.setType("USER");
+        assertThat(((MapHolder) user).toMap().get("__type"), is("USER"));
+        assertThat(user.identifier().getType(), is("USER"));
+        assertThat(((MapHolder) user).changedKeys(), hasItem("__type"));
+
+        user.setId("ID2");
+        assertThat(identifier.getId(), is("ID2"));
+    }
+
+    @Test
+    public void testCollectionAddAndRemove() {
+        user.addToUserDetails(userDetail1);
+        Collection<UserDetail> details = user.getUserDetails();
+        user.addToUserDetails(userDetail2, userDetail3, userDetail4);
+        assertThat(user.getUserDetails(), contains(userDetail1, userDetail2, userDetail3, userDetail4));
+        assertEquals(1, details.size());
+        assertThrows(UnsupportedOperationException.class, () -> user.getUserDetails().add(userDetail5));
+
+        user.removeFromUserDetails(userDetail4, userDetail2);
+        assertThat(user.getUserDetails(), contains(userDetail1, userDetail3));
+
+        user.addAllToUserDetails(Arrays.asList(userDetail4, userDetail5));
+        assertThat(user.getUserDetails(), contains(userDetail1, userDetail3, userDetail4, userDetail5));
+
+        user.removeAllFromUserDetails(Arrays.asList(userDetail1, userDetail5));
+        assertThat(user.getUserDetails(), contains(userDetail3, userDetail4));
+
+        user.removeIfFromUserDetails(d -> "3".equals(d.getId()));
+        assertThat(user.getUserDetails(), contains(userDetail4));
+
+        user.setUserDetails(Arrays.asList(userDetail1));
+        user.addToUserDetails(userDetail2);
+        assertThat(user.getUserDetails(), contains(userDetail1, userDetail2));
+    }
+
+    @Test
+    public void testRemoveWhileIterating() {
+        user.addToUserDetails(userDetail1, userDetail2, userDetail3);
+        for (UserDetail detail : user.getUserDetails()) {
+            user.removeFromUserDetails(detail);
+        }
+        assertTrue(user.getUserDetails().isEmpty());
+
+        user.addToUserDetails(userDetail1, userDetail2);
+        Collection<UserDetail> details = user.getUserDetails();
+        user.removeFromUserDetails(userDetail1);
+        assertThat(details, contains(userDetail1, userDetail2));
+        assertThat(user.getUserDetails(), contains(userDetail2));
+    }
+
+    @Test
+    public void testBulkRemoveByEquals() {
+        List<UserDetail> details = new ArrayList<>();
+        List<UserDetail> toRemove = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            details.add(MapProxy.builder(UserDetail.class).withMap(ImmutableMap.of("__id", String.valueOf(i))).newInstance());
+            if (i % 2 == 0) {
+                toRemove.add(MapProxy.builder(UserDetail.class).withMap(ImmutableMap.of("__id", String.valueOf(i))).newInstance());
+            }
+        }
+        user.addAllToUserDetails(details);
+        toRemove.add(details.get(1));
+
+        user.removeAllFromUserDetails(toRemove);
+        assertEquals(1499, user.getUserDetails().size());
+        assertThat(user.getUserDetails().iterator().next().getId(), is("3"));
+    }
+
+    @Test
+    public void testBulkRemoveByStaticEquals() {
+        UserDetail detail = MapProxy.builder(UserDetail.class).withMap(ImmutableMap.of("__id", "1", "note", "Note1")).newInstance();
+        UserDetail sameId = MapProxy.builder(UserDetail.class).withMap(ImmutableMap.of("__id", "1", "note", "Changed")).newInstance();
+
+        user.addToUserDetails(detail);
+        user.removeAllFromUserDetails(Collections.singletonList(sameId));
+        assertTrue(user.getUserDetails().isEmpty());
+
+        user.addToUserDetails(detail);
+        user.removeFromUserDetails(sameId);
+        assertTrue(user.getUserDetails().isEmpty());
+    }
+
+    @Test
+    public void testTrustedMap() {
+        Map<String, Object> typed = ImmutableMap.of("__id", "1", "country", Country.HU,
+                "singleUserDetail", ImmutableMap.of("__id", "2", "note", "Note2"));
+
+        User trusted = MapProxy.builder(User.class).withImmutable(true).withTrustedMap(typed).newInstance();
+        assertSame(typed, ((MapHolder) trusted).$internalMap());
+        assertEquals("1", trusted.getId());
+        assertThat(trusted.getCountry(), is(Country.HU));
+        assertEquals("Note2", trusted.getSingleUserDetail().getNote());
+        assertSame(trusted.getSingleUserDetail(), trusted.getSingleUserDetail());
+        assertEquals(MapProxy.builder(User.class).withImmutable(true).withMap(typed).newInstance().toString(), trusted.toString());
+
+        User mutable = MapProxy.builder(User.class).withTrustedMap(typed).newInstance();
+        mutable.getSingleUserDetail().setNote("Changed");
+        assertEquals("Changed", ((Map) ((MapHolder) mutable).toMap().get("singleUserDetail")).get("note"));
+        assertEquals("Note2", trusted.getSingleUserDetail().getNote());
+    }
+
+    @Test
+    public void testMapHolderImplementation() {
+        Map<String, Object> values = ImmutableMap.of("email", "test@test.com");
+        MapHolder holder = new MapHolder() {
+            @Override
+            public Map<String, Object> toMap() {
+                return values;
+            }
+
+            @Override
+            public Map<String, Object> $originalMap() {
+                return values;
+            }
+
+            @Override
+            public Map<String, Object> $internalMap() {
+                return values;
+            }
+
+            @Override
+            public <T> T adaptTo(Class<T> clazz) {
+                return MapProxy.builder(clazz).withMap(values).newInstance();
+            }
+        };
+
+        assertEquals("test@test.com", holder.adaptTo(User.class).getEmail());
+        assertThrows(UnsupportedOperationException.class, holder::changedKeys);
+        assertThrows(UnsupportedOperationException.class, holder::freeze);
+    }
+
+    @Test
+    public void testFreeze() {
+        Map<String, Object> typed = new HashMap<>();
+        typed.put("email", "test@test.com");
+        typed.put("singleUserDetail", ImmutableMap.of("__id", "1", "note", "Note1"));
+        typed.put("userDetails", Arrays.asList(ImmutableMap.of("__id", "2", "note", "Note2")));
+        User mutable = MapProxy.builder(User.class).withMap(typed).newInstance();
+        mutable.addToUserDetails(userDetail3);
+        UserDetail singleUserDetail = mutable.getSingleUserDetail();
+
+        ((MapHolder) mutable).freeze();
+
+        assertSame(singleUserDetail, mutable.getSingleUserDetail());
+        assertEquals("test@test.com", mutable.getEmail());
+        assertEquals(2, mutable.getUserDetails().size());
+        assertThrows(IllegalStateException.class, () -> mutable.setEmail("changed@test.com"));
+        assertThrows(IllegalStateException.class, () -> mutable.addToUserDetails(userDetail1));
+        assertThrows(IllegalStateException.class, () -> mutable.getSingleUserDetail().setNote("Changed"));
+        assertThrows(IllegalStateException.class, () -> userDetail3.setNote("Changed"));
+        assertThrows(UnsupportedOperationException.class, () -> mutable.getUserDetails().clear());
+        assertThrows(UnsupportedOperationException.class, () -> ((MapHolder) mutable).$internalMap().put("email", null));
+        assertThat(((MapHolder) mutable).toMap(), instanceOf(ImmutableMap.class));
+    }
+
+    @Test
+    public void testMutableClone() {
+        Map<String, Object> typed = new HashMap<>();
+        typed.put("email", "test@test.com");
+        typed.put("singleUserDetail", ImmutableMap.of("__id", "1", "note", "Note1"));
+        typed.put("userDetails", Arrays.asList(ImmutableMap.of("__id", "2", "note", "Note2")));
+        User template = MapProxy.builder(User.class).withMap(typed).newInstance();
+        template.addToUserDetails(userDetail3);
+
+        User clone = MapProxy.<User>builder(MapProxy.getHandler(template)).newInstance();
+        assertEquals(((MapHolder) template).toMap(), ((MapHolder) clone).toMap());
+        assertTrue(((MapHolder) clone).changedKeys().isEmpty());
+
+        clone.setEmail("clone@test.com");
+        clone.getSingleUserDetail().setNote("Clone");
+        clone.addToUserDetails(userDetail1);
+        assertEquals("test@test.com", template.getEmail());
+        assertEquals("Note1", template.getSingleUserDetail().getNote());
+        assertEquals(2, template.getUserDetails().size());
+        assertEquals(ImmutableSet.of("email", "singleUserDetail", "userDetails"), ((MapHolder) clone).changedKeys());
+
+        template.getUserDetails().iterator().next().setNote("Template");
+        template.setEmail("template@test.com");
+        assertEquals("Note2", clone.getUserDetails().iterator().next().getNote());
+        assertEquals("clone@test.com", clone.getEmail());
+        assertEquals("Clone", clone.getSingleUserDetail().getNote());
+        assertEquals(3, clone.getUserDetails().size());
+        assertSame(clone.getSingleUserDetail(), clone.getSingleUserDetail());
+
+        User second = MapProxy.<User>builder(MapProxy.getHandler(clone)).withImmutable(true).newInstance();
+        assertEquals(((MapHolder) clone).toMap(), ((MapHolder) second).toMap());
+        assertThrows(IllegalStateException.class, () -> second.setEmail("second@test.com"));
+    }
+
+    @Test
+    public void testCloneKeepsSourceReferences() {
+        Map<String, Object> typed = new HashMap<>();
+        typed.put("singleUserDetail", ImmutableMap.of("__id", "1", "note", "Note1"));
+        User source = MapProxy.builder(User.class).withMap(typed).newInstance();
+        source.addToUserDetails(userDetail3);
+        UserDetail singleUserDetail = source.getSingleUserDetail();
+        Collection<UserDetail> userDetails = source.getUserDetails();
+
+        User clone = MapProxy.<User>builder(MapProxy.getHandler(source)).newInstance();
+        singleUserDetail.setNote("Source");
+        source.addToUserDetails(userDetail1);
+
+        assertSame(singleUserDetail, source.getSingleUserDetail());
+        assertEquals("Source", source.getSingleUserDetail().getNote());
+        assertEquals("Note1", clone.getSingleUserDetail().getNote());
+        assertEquals(2, source.getUserDetails().size());
+        assertEquals(1, clone.getUserDetails().size());
+        assertEquals(1, userDetails.size());
+    }
+
+    @Test
+    public void testMutableCopyOfImmutable() {
+        Map<String, Object> typed = new HashMap<>();
+        typed.put("singleUserDetail", ImmutableMap.of("__id", "1", "note", "Note1"));
+        typed.put("userDetails", Arrays.asList(ImmutableMap.of("__id", "2", "note", "Note2")));
+        User immutable = MapProxy.builder(User.class).withImmutable(true).withMap(typed).newInstance();
+
+        User mutable = MapProxy.<User>builder(MapProxy.getHandler(immutable)).withImmutable(false).newInstance();
+        mutable.getSingleUserDetail().setNote("Changed");
+        mutable.getUserDetails().iterator().next().setNote("Changed");
+        assertEquals("Changed", mutable.getSingleUserDetail().getNote());
+        assertEquals("Note1", immutable.getSingleUserDetail().getNote());
+        assertEquals("Note2", immutable.getUserDetails().iterator().next().getNote());
+
+        User copy = MapProxy.<User>builder(MapProxy.getHandler(immutable)).newInstance();
+        assertSame(immutable.getSingleUserDetail(), copy.getSingleUserDetail());
+    }
+
+    @Test
+    public void testStableNestedIdentity() {
+        Map<String, Object> typed = new HashMap<>();
+        typed.put("__id", "1");
+        typed.put("__type", "User");
+        typed.put("singleUserDetail", ImmutableMap.of("__id", "1", "note", "Note1"));
+        User immutable = MapProxy.builder(User.class).withImmutable(true).withTrustedMap(ImmutableMap.copyOf(typed)).newInstance();
+
+        Set<Object> singleUserDetails = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        Set<Object> identifiers = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        IntStream.range(0, 1000).parallel().forEach(i -> {
+            singleUserDetails.add(immutable.getSingleUserDetail());
+            identifiers.add(immutable.identifier());
+        });
+        assertEquals(1, singleUserDetails.size());
+        assertEquals(1, identifiers.size());
+        assertSame(immutable.identifier(), immutable.identifier());
+
+        User mutable = MapProxy.builder(User.class).withTrustedMap(typed).newInstance();
+        UserDetail singleUserDetail = mutable.getSingleUserDetail();
+        assertSame(singleUserDetail, mutable.getSingleUserDetail());
+        mutable.setSingleUserDetail(userDetail1);
+        assertSame(userDetail1, mutable.getSingleUserDetail());
+        assertSame(mutable.getSingleUserDetail(), mutable.getSingleUserDetail());
+    }
+
+    @Test
+    public void testStableNestedIdentityWithView() {
+        user.setCountry(Country.HU);
+        user.setSingleUserDetail(userDetail1);
+        user.addToUserDetails(userDetail2, userDetail3);
+        UserDetail singleUserDetail = user.getSingleUserDetail();
+        UserSummary summary = user.adaptTo(UserSummary.class);
+
+        Identifier identifier = summary.getSingleUserDetail();
+        Collection<Identifier> identifiers = summary.getUserDetails();
+        for (int i = 0; i < 3; i++) {
+            assertSame(singleUserDetail, user.getSingleUserDetail());
+            assertSame(identifier, summary.getSingleUserDetail());
+            assertSame(identifiers, summary.getUserDetails());
+            assertEquals("HU", summary.getCountry());
+            assertEquals(Country.HU, user.getCountry());
+        }
+
+        User lazy = MapProxy.builder(User.class).withTrustedMap(((MapHolder) user).toMap()).newInstance();
+        UserSummary lazySummary = lazy.adaptTo(UserSummary.class);
+        UserDetail lazySingleUserDetail = lazy.getSingleUserDetail();
+        Identifier lazyIdentifier = lazySummary.getSingleUserDetail();
+        for (int i = 0; i < 3; i++) {
+            assertSame(lazySingleUserDetail, lazy.getSingleUserDetail());
+            assertSame(lazyIdentifier, lazySummary.getSingleUserDetail());
+            assertEquals("HU", lazySummary.getCountry());
+            assertEquals(Country.HU, lazy.getCountry());
+        }
+    }
+
+    @Test
+    public void testSharedNodeConversion() {
+        Map<String, Object> detail = new HashMap<>();
+        detail.put("__id", "1");
+        detail.put("note", "Note1");
+        Map<String, Object> typed = new HashMap<>();
+        typed.put("singleUserDetail", detail);
+        typed.put("userDetails", Arrays.asList(detail, ImmutableMap.of("__id", "2", "note", "Note2")));
+
+        User mutable = MapProxy.builder(User.class).withMap(typed).newInstance();
+        assertSame(mutable.getSingleUserDetail(), mutable.getUserDetails().iterator().next());
+        mutable.getSingleUserDetail().setNote("Shared");
+        assertEquals("Shared", mutable.getUserDetails().iterator().next().getNote());
+
+        Map<String, Object> map = ((MapHolder) mutable).toMap();
+        assertSame(map.get("singleUserDetail"), ((List<?>) map.get("userDetails")).get(0));
+
+        User immutable = MapProxy.builder(User.class).withImmutable(true).withMap(typed).newInstance();
+        assertSame(immutable.getSingleUserDetail(), immutable.getUserDetails().iterator().next());
+        Map<String, Object> immutableMap = ((MapHolder) immutable).toMap();
+        assertSame(immutableMap.get("singleUserDetail"), ((List<?>) immutableMap.get("userDetails")).get(0));
+
+        User separate = MapProxy.builder(User.class).withMap(typed).newInstance();
+        assertNotSame(mutable.getSingleUserDetail(), separate.getSingleUserDetail());
+    }
+
+    @Test
+    public void testCyclicConversion() {
+        Map<String, Object> root = new HashMap<>();
+        Map<String, Object> child = new HashMap<>();
+        root.put("name", "root");
+        root.put("children", Arrays.asList(child));
+        child.put("name", "child");
+        child.put("parent", root);
+
+        Node node = MapProxy.builder(Node.class).withMap(root).newInstance();
+        Node childNode = node.getChildren().iterator().next();
+        assertEquals("child", childNode.getName());
+        assertSame(node, childNode.getParent());
+
+        Map<String, Object> map = ((MapHolder) node).toMap();
+        Map<String, Object> childMap = (Map<String, Object>) ((List<?>) map.get("children")).get(0);
+        assertEquals("child", childMap.get("name"));
+        assertSame(map, childMap.get("parent"));
+
+        Node immutable = MapProxy.builder(Node.class).withImmutable(true).withMap(root).newInstance();
+        assertSame(immutable, immutable.getChildren().iterator().next().getParent());
+        assertThrows(IllegalStateException.class, () -> ((MapHolder) immutable).toMap());
+    }
+
     @Test
     public void testEnum() {
         user.setCountry(Country.HU);
@@ -472,6 +820,17 @@ public class MapProxyTest {
         assertMapStructure(map);
     }
 
+    @Test
+    public void testBuildFromBeanWithMissingProperties() {
+        IdentifierBean identifierBean = IdentifierBean.builder().id("1").build();
+
+        UserDetail detail = MapProxy.builder(UserDetail.class).withBean(identifierBean).newInstance();
+
+        assertEquals("1", detail.getId());
+        assertNull(detail.getNote());
+        assertFalse(((MapHolder) detail).toMap().containsKey("note"));
+    }
+
     @Test
     public void testAdaptToAnotherInterface() {
         Map<String, Object> prepared = getSimpleProxyMap();
@@ -494,6 +853,68 @@ public class MapProxyTest {
 
     }
 
+    @Test
+    public void testAdaptToInterfaceSharesStorage() {
+        user.setLoginName("teszt");
+        user.setCountry(Country.HU);
+        user.setSingleUserDetail(userDetail1);
+        user.addToUserDetails(userDetail2, userDetail3);
+
+        UserAlternative userAlternative = user.adaptTo(UserAlternative.class);
+        userAlternative.setEmail("test@test.com");
+        assertEquals("test@test.com", user.getEmail());
+        user.setSms("123");
+        assertEquals("123", userAlternative.getSms());
+        assertSame(((MapHolder) user).$internalMap(), ((MapHolder) userAlternative).$internalMap());
+
+        UserSummary summary = user.adaptTo(UserSummary.class);
+        assertEquals(Optional.of("teszt"), summary.getLoginName());
+        assertEquals("HU", summary.getCountry());
+        assertEquals("1", summary.getSingleUserDetail().getId());
+        assertSame(summary.getSingleUserDetail(), summary.getSingleUserDetail());
+        assertThat(summary.getUserDetails().stream().map(Identifier::getId).collect(Collectors.toList()), contains("2", "3"));
+
+        summary.setLoginName("changed");
+        assertEquals(Optional.of("changed"), user.getLoginName());
+        assertThat(summary.toString(), not(containsString("test@test.com")));
+    }
+
+    @Test
+    public void testAdaptToWritesNestedMapThrough() {
+        Map<String, Object> nested = new HashMap<>(ImmutableMap.of("__id", "1", "note", "Note1"));
+        User source = MapProxy.builder(User.class).withTrustedMap(ImmutableMap.of("singleUserDetail", nested)).newInstance();
+        UserSummary summary = source.adaptTo(UserSummary.class);
+
+        summary.getSingleUserDetail().setType("Detail");
+        source.getSingleUserDetail().setNote("Changed");
+        assertEquals("Detail", nested.get("__type"));
+        assertEquals("Changed", nested.get("note"));
+        assertSame(nested, ((MapHolder) source).$internalMap().get("singleUserDetail"));
+    }
+
+    @Test
+    public void testAdaptToKeepsSourceConverted() {
+        user.setLoginName("teszt");
+        user.setCountry(Country.HU);
+        user.setSingleUserDetail(userDetail1);
+
+        UserSummary summary = user.adaptTo(UserSummary.class);
+        assertEquals(Optional.of("teszt"), summary.getLoginName());
+        assertNotNull(MapProxy.getHandler(user).getConvertedStorage());
+
+        assertEquals("HU", summary.getCountry());
+        assertEquals("1", summary.getSingleUserDetail().getId());
+        assertNotNull(MapProxy.getHandler(user).getConvertedStorage());
+        assertThat(((MapHolder) user).$internalMap().get("country"), is(Country.HU));
+        assertSame(userDetail1, ((MapHolder) user).$internalMap().get("singleUserDetail"));
+
+        summary.setLoginName("changed");
+        assertNull(MapProxy.getHandler(user).getConvertedStorage());
+        assertEquals(Optional.of("changed"), user.getLoginName());
+        assertEquals(Country.HU, user.getCountry());
+        assertEquals("1", user.getSingleUserDetail().getId());
+    }
+
     @Test
     public void testEqualsWithSameProxyValue() {
         Map<String, Object> prepared1 =
@@ -628,6 +1049,29 @@ public class MapProxyTest {
 
     }
 
+    @Test
+    public void testBuildToBeanFromMutableProxy() {
+        user.setLoginName("teszt");
+        user.setCountry(Country.HU);
+        user.setBirthCountry(Country.AT);
+        user.setSingleUserDetail(userDetail1);
+        user.addToUserDetails(userDetail2, userDetail3);
+
+        UserBean bean = user.adaptTo(UserBean.class);
+        UserBean other = user.adaptTo(UserBean.class);
+
+        assertEquals("teszt", bean.getLoginName());
+        assertThat(bean.getCountry(), is(Country.HU));
+        assertThat(bean.getBirthCountry(), is(Country.AT));
+        assertEquals("Note1", bean.getSingleUserDetail().getNote());
+        assertEquals(2, bean.getUserDetails().size());
+        assertEquals("Note2", bean.getUserDetails().iterator().next().getNote());
+
+        userDetail1.setNote("Changed");
+        assertEquals("Note1", bean.getSingleUserDetail().getNote());
+        assertNotSame(bean.getSingleUserDetail(), other.getSingleUserDetail());
+    }
+
     @Test
     public void testBuildFromBean() {
         UserBean userBean = UserBean.userBeanBuilder()
@@ -712,4 +1156,36 @@ public class MapProxyTest {
     <T> T getMapHolderValue(Object input, Object key, Class<T> target) {
         return (T) ((MapHolder) input).toMap().get(key);
     }
+    @Test
+    public void testChangeTracking() {
+        User tracked = MapProxy.builder(User.class)
+                .withMap(ImmutableMap.of("email", "test@test.com", "singleUserDetail", ImmutableMap.of("__id", "1", "note", "Note1")))
+                .newInstance();
+        MapHolder holder = (MapHolder) tracked;
+
+        assertTrue(holder.changedKeys().isEmpty());
+        assertTrue(holder.toDeltaMap().isEmpty());
+
+        tracked.setFirstName("First");
+        tracked.setCountry(Country.HU);
+        assertEquals(new LinkedHashSet<>(Arrays.asList("firstName", "country")), holder.changedKeys());
+        assertThat(holder.toDeltaMap(), hasEntry("firstName", "First"));
+        assertThat(holder.toDeltaMap(), hasEntry("country", "HU"));
+        assertEquals(2, holder.toDeltaMap().size());
+
+        holder.markClean();
+        assertTrue(holder.changedKeys().isEmpty());
+
+        tracked.getSingleUserDetail().setNote("Changed");
+        assertEquals(Collections.singleton("singleUserDetail"), holder.changedKeys());
+        assertEquals(ImmutableMap.of("singleUserDetail", ImmutableMap.of("note", "Changed")), holder.toDeltaMap());
+
+        holder.markClean();
+        assertTrue(holder.changedKeys().isEmpty());
+        assertTrue(((MapHolder) tracked.getSingleUserDetail()).changedKeys().isEmpty());
+
+        tracked.addToUserDetails(userDetail1);
+        assertEquals(Collections.singleton("userDetails"), holder.changedKeys());
+    }
+
 }
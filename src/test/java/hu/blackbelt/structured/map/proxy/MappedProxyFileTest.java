@@ -0,0 +1,157 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import hu.blackbelt.structured.map.proxy.entity.Country;
+import hu.blackbelt.structured.map.proxy.entity.User;
+import hu.blackbelt.structured.map.proxy.entity.UserDetail;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MappedProxyFileTest {
+
+    Path file;
+
+    @BeforeEach
+    public void before() throws IOException {
+        file = Files.createTempFile("mapped-proxy", ".smp");
+    }
+
+    @AfterEach
+    public void after() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        LocalDateTime time = LocalDateTime.of(2022, 2, 2, 22, 22, 22, 123);
+
+        User user1 = MapProxy.builder(User.class).newInstance();
+        user1.setId("1");
+        user1.setActive(true);
+        user1.setLoginName("teszt");
+        user1.setEmail("teszt@example.com");
+        user1.setCountry(Country.AT);
+        user1.setBirthCountry(Country.HU);
+        user1.setLastLoginTime(time);
+
+        User user2 = MapProxy.builder(User.class).newInstance();
+        user2.setId("2");
+        user2.setActive(false);
+        user2.setLoginName("teszt");
+
+        MappedProxyFile.write(User.class, List.of(user1, user2), file);
+
+        try (MappedProxyFile<User> users = MappedProxyFile.open(User.class, file)) {
+            assertEquals(2, users.size());
+
+            User mapped1 = users.get(0);
+            assertThat(mapped1.getId(), is("1"));
+            assertThat(mapped1.getActive(), is(true));
+            assertThat(mapped1.getLoginName(), is(Optional.of("teszt")));
+            assertThat(mapped1.getEmail(), is("teszt@example.com"));
+            assertThat(mapped1.getCountry(), is(Country.AT));
+            assertThat(mapped1.getBirthCountry(), is(Optional.of(Country.HU)));
+            assertThat(mapped1.getLastLoginTime(), is(time));
+            assertThat(mapped1.getSms(), nullValue());
+            assertThat(mapped1.identifier().getId(), is("1"));
+
+            User mapped2 = users.get(1);
+            assertThat(mapped2.getId(), is("2"));
+            assertThat(mapped2.getActive(), is(false));
+            assertThat(mapped2.getLoginName(), is(Optional.of("teszt")));
+            assertThat(mapped2.getCountry(), nullValue());
+
+            Map<String, Object> map = ((MapHolder) mapped1).toMap();
+            assertThat(map.get("__id"), is("1"));
+            assertThat(map.get("country"), is("AT"));
+
+            assertThrows(IllegalStateException.class, () -> mapped1.setEmail("other@example.com"));
+        }
+    }
+
+    @Test
+    public void testWriteLazilyConvertedProxy() throws IOException {
+        User mutable = MapProxy.builder(User.class).newInstance();
+        mutable.setId("1");
+        mutable.setCountry(Country.HU);
+        User immutable = MapProxy.<User>builder(MapProxy.getHandler(mutable)).withImmutable(true).newInstance();
+
+        MappedProxyFile.write(User.class, List.of(immutable), file);
+
+        try (MappedProxyFile<User> users = MappedProxyFile.open(User.class, file)) {
+            assertThat(users.get(0).getId(), is("1"));
+            assertThat(users.get(0).getCountry(), is(Country.HU));
+        }
+    }
+
+    @Test
+    public void testUnknownEnumConstant() throws IOException {
+        User user = MapProxy.builder(User.class).newInstance();
+        user.setId("1");
+        user.setCountry(Country.AT);
+
+        MappedProxyFile.write(User.class, List.of(user), file);
+        byte[] bytes = Files.readAllBytes(file);
+        String content = new String(bytes, StandardCharsets.ISO_8859_1);
+        int position = content.lastIndexOf("AT");
+        bytes[position] = 'X';
+        bytes[position + 1] = 'X';
+        Files.write(file, bytes);
+
+        try (MappedProxyFile<User> users = MappedProxyFile.open(User.class, file)) {
+            User mapped = users.get(0);
+            assertThat(mapped.getId(), is("1"));
+            assertThrows(IllegalArgumentException.class, mapped::getCountry);
+        }
+    }
+
+    @Test
+    public void testUnsupportedAttribute() {
+        User user = MapProxy.builder(User.class).newInstance();
+        user.setSingleUserDetail(MapProxy.builder(UserDetail.class).newInstance());
+
+        assertThrows(IllegalArgumentException.class, () -> MappedProxyFile.write(User.class, List.of(user), file));
+    }
+
+    @Test
+    public void testNotMappedFile() throws IOException {
+        Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 });
+
+        assertThrows(IllegalArgumentException.class, () -> MappedProxyFile.open(User.class, file));
+    }
+}
@@ -0,0 +1,80 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableMap;
+import hu.blackbelt.structured.map.proxy.entity.Country;
+import hu.blackbelt.structured.map.proxy.entity.User;
+import hu.blackbelt.structured.map.proxy.entity.UserBean;
+import hu.blackbelt.structured.map.proxy.entity.UserDetailBean;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PropertyPathTest {
+
+    @Test
+    public void testProxyPath() {
+        User user = MapProxy.builder(User.class)
+                .withMap(ImmutableMap.of("loginName", "test", "country", "HU",
+                        "singleUserDetail", ImmutableMap.of("__id", "1", "note", "Note")))
+                .newInstance();
+
+        assertEquals("Note", PropertyPath.compile(User.class, "singleUserDetail.note").get(user));
+        assertEquals("1", PropertyPath.compile(User.class, "singleUserDetail.id").get(user));
+        assertEquals("test", PropertyPath.compile(User.class, "loginName").get(user));
+        assertEquals(Country.HU, PropertyPath.compile(User.class, "country").get(user));
+        assertEquals(String.class, PropertyPath.compile(User.class, "loginName").getType());
+        assertSame(PropertyPath.compile(User.class, "loginName"), PropertyPath.compile(User.class, "loginName"));
+
+        user.setSingleUserDetail(null);
+        assertNull(PropertyPath.compile(User.class, "singleUserDetail.note").get(user));
+        assertNull(PropertyPath.compile(User.class, "firstName").get(user));
+    }
+
+    @Test
+    public void testTrustedProxyPath() {
+        User user = MapProxy.builder(User.class)
+                .withTrustedMap(ImmutableMap.of("country", "HU"))
+                .newInstance();
+
+        assertEquals(Country.HU, PropertyPath.compile(User.class, "country").get(user));
+    }
+
+    @Test
+    public void testBeanPath() {
+        UserDetailBean userDetail = new UserDetailBean();
+        userDetail.setNote("Note");
+        UserBean user = new UserBean();
+        user.setSingleUserDetail(userDetail);
+
+        assertEquals("Note", PropertyPath.compile(UserBean.class, "singleUserDetail.note").get(user));
+        assertNull(PropertyPath.compile(UserBean.class, "singleUserDetail.note").get(new UserBean()));
+    }
+
+    @Test
+    public void testUnknownPath() {
+        assertThrows(IllegalArgumentException.class, () -> PropertyPath.compile(User.class, "singleUserDetail.unknown"));
+    }
+}
@@ -0,0 +1,174 @@
+package hu.blackbelt.structured.map.proxy;
+
+/*-
+ * #%L
+ * Structured map proxy
+ * %%
+ * Copyright (C) 2018 - 2022 BlackBelt Technology
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import hu.blackbelt.structured.map.proxy.entity.Event;
+import hu.blackbelt.structured.map.proxy.entity.User;
+import hu.blackbelt.structured.map.proxy.entity.UserDetail;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProxyColumnsTest {
+
+    @Test
+    public void testAddAndGet() {
+        ProxyColumns<UserDetail> details = ProxyColumns.of(UserDetail.class);
+        for (int i = 0; i < 100; i++) {
+            UserDetail detail = MapProxy.builder(UserDetail.class).newInstance();
+            detail.setId(String.valueOf(i));
+            detail.setNote("Note" + i);
+            details.add(detail);
+        }
+
+        assertEquals(100, details.size());
+        assertThat(details.get(42).getId(), is("42"));
+        assertThat(details.get(42).getNote(), is("Note42"));
+        assertThat(((MapHolder) details.get(42)).toMap().get("__id"), is("42"));
+        assertArrayEquals(new String[] { "0", "1", "2" }, Arrays.copyOf(details.column("id", String.class), 3));
+
+        details.get(42).setNote("Changed");
+        assertThat(details.get(42).getNote(), is("Changed"));
+
+        UserDetail removed = details.remove(0);
+        assertThat(removed.getId(), is("0"));
+        assertEquals(99, details.size());
+        assertThat(details.get(0).getId(), is("1"));
+    }
+
+    @Test
+    public void testPrimitiveColumns() {
+        ProxyColumns<Event> events = ProxyColumns.of(Event.class);
+        for (int i = 0; i < 10; i++) {
+            Event event = MapProxy.builder(Event.class).newInstance();
+            event.setTitle("Event" + i);
+            event.setPrivate(i % 2 == 0);
+            event.setDate(new Date(i));
+            events.add(event);
+        }
+
+        boolean[] privates = events.booleanColumn("private");
+        assertTrue(privates[0]);
+        assertTrue(!privates[1]);
+        assertThat(events.get(3).isPrivate(), is(false));
+        assertThat(events.get(3).getNotes(), nullValue());
+        assertThat(events.get(3).getDate(), is(new Date(3)));
+    }
+
+    @Test
+    public void testBackingCollectionAttribute() {
+        ProxyColumns<UserDetail> details = ProxyColumns.of(UserDetail.class);
+        UserDetail detail = MapProxy.builder(UserDetail.class).newInstance();
+        detail.setId("1");
+        detail.setNote("Note1");
+        details.add(detail);
+
+        User user = MapProxy.builder(User.class)
+                .withMap(Map.of("userDetails", details))
+                .newInstance();
+
+        assertSame(details, user.getUserDetails());
+
+        UserDetail detail2 = MapProxy.builder(UserDetail.class).newInstance();
+        detail2.setId("2");
+        user.addToUserDetails(detail2);
+
+        assertSame(details, user.getUserDetails());
+        assertEquals(2, details.size());
+        assertThat(details.get(1).getId(), is("2"));
+
+        user.removeFromUserDetails(detail);
+        assertEquals(1, details.size());
+        assertThat(details.get(0).getId(), is("2"));
+    }
+
+    @Test
+    public void testElementsAfterStructuralChange() {
+        ProxyColumns<UserDetail> details = ProxyColumns.of(UserDetail.class);
+        for (int i = 0; i < 3; i++) {
+            UserDetail detail = MapProxy.builder(UserDetail.class).newInstance();
+            detail.setId(String.valueOf(i));
+            details.add(detail);
+        }
+        UserDetail first = details.get(0);
+        UserDetail last = details.get(2);
+
+        details.add(MapProxy.builder(UserDetail.class).withMap(Map.of("__id", "3")).newInstance());
+        assertThat(first.getId(), is("0"));
+
+        details.remove(0);
+        assertThrows(ConcurrentModificationException.class, first::getId);
+        assertThrows(ConcurrentModificationException.class, () -> last.setNote("Changed"));
+        assertThat(details.get(0).getId(), is("1"));
+    }
+
+    @Test
+    public void testImmutableProxyFreezesColumns() {
+        ProxyColumns<UserDetail> details = ProxyColumns.of(UserDetail.class);
+        details.add(MapProxy.builder(UserDetail.class).withMap(Map.of("__id", "1", "note", "Note1")).newInstance());
+
+        User user = MapProxy.builder(User.class)
+                .withImmutable(true)
+                .withMap(Map.of("userDetails", details))
+                .newInstance();
+
+        assertNotSame(details, user.getUserDetails());
+        ProxyColumns<UserDetail> frozen = (ProxyColumns<UserDetail>) user.getUserDetails();
+        assertTrue(frozen.isFrozen());
+        assertThrows(IllegalStateException.class, () -> frozen.get(0).setNote("Changed"));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.remove(0));
+
+        details.get(0).setNote("Changed");
+        details.clear();
+        assertEquals(1, frozen.size());
+        assertThat(frozen.get(0).getNote(), is("Note1"));
+    }
+
+    @Test
+    public void testFreezeColumnsInPlace() {
+        ProxyColumns<UserDetail> details = ProxyColumns.of(UserDetail.class);
+        details.add(MapProxy.builder(UserDetail.class).withMap(Map.of("__id", "1", "note", "Note1")).newInstance());
+        User user = MapProxy.builder(User.class).withMap(Map.of("userDetails", details)).newInstance();
+        UserDetail before = user.getUserDetails().iterator().next();
+
+        ((MapHolder) user).freeze();
+
+        assertSame(details, user.getUserDetails());
+        assertTrue(details.isFrozen());
+        assertThrows(IllegalStateException.class, () -> user.getUserDetails().iterator().next().setNote("Changed"));
+        assertThrows(IllegalStateException.class, () -> before.setNote("Changed"));
+        assertThrows(UnsupportedOperationException.class, () -> details.add(before));
+        assertThat(details.get(0).getNote(), is("Note1"));
+    }
+}
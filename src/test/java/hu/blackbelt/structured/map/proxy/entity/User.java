@@ -26,6 +26,7 @@ import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 public interface User extends Entity {
     Boolean getActive();
@@ -59,6 +60,12 @@ public interface User extends Entity {
 
     void removeFromUserDetails(UserDetail first, UserDetail... userDetails);
 
+    void addAllToUserDetails(Collection<UserDetail> userDetails);
+
+    void removeAllFromUserDetails(Collection<UserDetail> userDetails);
+
+    void removeIfFromUserDetails(Predicate<UserDetail> filter);
+
     Collection getCollectionWithoutType();
     void setCollectionWithoutType(Collection collectionWithoutType);
 
@@ -100,6 +100,31 @@ public class ReflectionUtilTest {
 
     }
 
+    @Test
+    public void testGetFieldValueRecurivelyGetterException() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+            getFieldValue(new T5(), Arrays.asList("test").iterator());
+        });
+        assertThat(e.getCause().getCause().getMessage(), is("Invalid state"));
+    }
+
+    @Test
+    public void testGetFieldValueByField() throws NoSuchFieldException {
+        F3 f3 = new F3();
+        f3.setS("test");
+        assertThat(getFieldValue(f3, F3.class.getDeclaredField("s")), is("test"));
+        assertThat(getFieldValue(null, T3.class.getDeclaredField("TEST")), is(""));
+    }
+
+    @Test
+    public void testAccessorHandles() throws Throwable {
+        T1 t = new T1();
+        F1 f = new F1();
+        ClassAccessors accessors = ClassAccessors.of(T1.class);
+        accessors.getSetterHandle("test").invoke(t, new Object[] {f});
+        assertThat(accessors.getGetterHandle("test").invoke(t), is(f));
+        assertThat(accessors.getFieldReader("test").invoke(t), is(f));
+    }
 
     public static class F1 {
     }
@@ -132,6 +157,12 @@ public class ReflectionUtilTest {
         private F3 test;
     }
 
+    public static class T5 {
+        public F1 getTest() {
+            throw new IllegalArgumentException("Invalid state");
+        }
+    }
+
     @Setter
     @Getter
     public static class T3 {